@@ -0,0 +1,88 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import models.BitBoard;
+import models.GameBoard;
+import models.Message;
+import models.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of GameBoard.move. A valid move changes the board, so the valid and winning
+ * benchmarks move on a fresh copy of a prepared board. copyBoard measures the copy alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBoardBenchmark {
+
+  private GameBoard started;
+  private GameBoard almostWon;
+  private BitBoard gomoku;
+
+  /**
+   * Prepares a started board with one mark, a board where player 1 wins with (0, 2), and
+   * a 15x15 board with a line of 5 through (7, 7).
+   */
+  @Setup
+  public void setUp() {
+    started = new GameBoard('X');
+    started.joinGame();
+    started.move(1, 1, 1);
+
+    char[][] boardState = {{'X', 'X', '\u0000'}, {'O', 'O', '\u0000'},
+        {'\u0000', '\u0000', '\u0000'}};
+    almostWon = new GameBoard(new Player('X', 1), new Player('O', 2), true, 1, boardState,
+        0, false);
+
+    gomoku = new BitBoard(15);
+    for (int i = 5; i < 10; i++) {
+      gomoku.place('X', i, i);
+      gomoku.place('O', i, 14 - i);
+    }
+  }
+
+  @Benchmark
+  public GameBoard copyBoard() {
+    return started.copy();
+  }
+
+  @Benchmark
+  public Message validMove() {
+    return started.copy().move(2, 0, 0);
+  }
+
+  @Benchmark
+  public Message winningMove() {
+    return almostWon.copy().move(1, 0, 2);
+  }
+
+  // Checking a move on a large board only looks at the lines through it
+  @Benchmark
+  public boolean largeBoardWinCheck() {
+    return gomoku.hasLine('X', 7, 7, 5);
+  }
+
+  // Rejected moves leave the board unchanged, so the same board is reused
+  @Benchmark
+  public Message slotTakenMove() {
+    return started.move(2, 1, 1);
+  }
+
+  @Benchmark
+  public Message notYourTurnMove() {
+    return started.move(1, 0, 0);
+  }
+}
@@ -0,0 +1,121 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import models.BoardSnapshot;
+import models.GameBoard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.GameRepository;
+import utils.GameRepository.Backend;
+import utils.InMemoryGameRepository;
+import utils.MappedGameRepository;
+import utils.SqliteDatabase;
+import utils.SqliteDatabase.StorageProfile;
+import utils.SqliteGameRepository;
+import utils.WriteBehindQueue;
+import utils.WriteBehindQueue.Durability;
+
+/**
+ * Benchmarks of the write made by every move, and of the reads made on startup to restore
+ * one game or a thousand, through each backend of the game repository. SQLite writes wait 
+ * for their commit, as with the SYNC durability, and use the move log so that every game 
+ * is stored. The SQLite and mapped backends write to temporary files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameRepositoryBenchmark {
+
+  private static final int GAMES = 1000;
+
+  @Param({"MEMORY", "SQLITE", "MAPPED"})
+  public Backend backend;
+
+  private GameRepository repository;
+  private Path file;
+  private BoardSnapshot gameBoard;
+
+  /**
+   * Opens the backend and stores the games to read back.
+   * @throws IOException if the file of the backend cannot be created
+   * @throws SQLException if the backend cannot be opened
+   */
+  @Setup
+  public void setUp() throws IOException, SQLException {
+    switch (backend) {
+      case MEMORY:
+        repository = new InMemoryGameRepository();
+        break;
+      case MAPPED:
+        file = Files.createTempFile("tictactoe", ".games");
+        repository = new MappedGameRepository(file);
+        break;
+      default:
+        file = Files.createTempFile("tictactoe", ".db");
+        SqliteDatabase db = new SqliteDatabase(file.toString(), 4, StorageProfile.DURABLE);
+        repository = new SqliteGameRepository(db, 
+            new WriteBehindQueue(db, Durability.SYNC, 16), true, "default");
+    }
+    GameBoard played = new GameBoard('X');
+    played.joinGame();
+    played.move(1, 1, 1);
+    gameBoard = played.snapshot();
+    repository.replace("benchmark", gameBoard);
+    for (int i = 0; i < GAMES; i++) {
+      repository.replace("game" + i, gameBoard);
+    }
+  }
+
+  @Benchmark
+  public void save() throws SQLException {
+    repository.save("benchmark", gameBoard);
+  }
+
+  @Benchmark
+  public GameBoard load() throws SQLException {
+    return repository.load("benchmark");
+  }
+
+  @Benchmark
+  public Map<String, GameBoard> loadAll() throws SQLException {
+    return repository.loadAll();
+  }
+
+  /**
+   * Deletes the games and closes the backend.
+   * @throws IOException if the file of the backend cannot be deleted
+   * @throws SQLException if the backend cannot be closed
+   */
+  @TearDown
+  public void tearDown() throws IOException, SQLException {
+    repository.delete("benchmark");
+    for (int i = 0; i < GAMES; i++) {
+      repository.delete("game" + i);
+    }
+    repository.close();
+    if (file != null) {
+      Files.delete(file);
+      // SQLite leaves its write-ahead log next to the database
+      Files.deleteIfExists(Path.of(file + "-wal"));
+      Files.deleteIfExists(Path.of(file + "-shm"));
+    }
+  }
+}
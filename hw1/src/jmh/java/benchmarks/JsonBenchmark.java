@@ -0,0 +1,69 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import models.GameBoard;
+import models.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the JSON sent for every request and broadcast. The board caches its JSON per
+ * version, so the uncached benchmarks change the turn first to force a new encoding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+  private GameBoard gameBoard;
+
+  /**
+   * Prepares a started board with a few marks.
+   */
+  @Setup
+  public void setUp() {
+    gameBoard = new GameBoard('X');
+    gameBoard.joinGame();
+    gameBoard.move(1, 0, 0);
+    gameBoard.move(2, 1, 1);
+    gameBoard.move(1, 2, 2);
+  }
+
+  @Benchmark
+  public String gameBoardToJson() {
+    gameBoard.setTurn(gameBoard.getTurn());
+    return gameBoard.toJson();
+  }
+
+  @Benchmark
+  public byte[] gameBoardToJsonBytes() {
+    gameBoard.setTurn(gameBoard.getTurn());
+    return gameBoard.toJsonBytes();
+  }
+
+  @Benchmark
+  public String gameBoardToJsonCached() {
+    return gameBoard.toJson();
+  }
+
+  @Benchmark
+  public String messageToJson() {
+    return new Message(false, 200, "Please wait for your turn").toJson();
+  }
+
+  @Benchmark
+  public String sharedMessageToJson() {
+    return Message.NOT_YOUR_TURN.toJson();
+  }
+}
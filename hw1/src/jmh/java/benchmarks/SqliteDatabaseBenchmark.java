@@ -0,0 +1,102 @@
+package benchmarks;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import models.GameBoard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.SqliteDatabase;
+import utils.SqliteDatabase.StorageProfile;
+
+/**
+ * Benchmarks of the database writes made after every move and the read made on startup.
+ * Every write is committed on its own, as with the SYNC durability, under each storage
+ * profile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqliteDatabaseBenchmark {
+
+  @Param({"DURABLE", "BALANCED", "FAST"})
+  public StorageProfile profile;
+
+  private SqliteDatabase db;
+  private GameBoard gameBoard;
+
+  /**
+   * Opens the database and stores the boards to read back.
+   * @throws SQLException if problem with connection or statement
+   */
+  @Setup
+  public void setUp() throws SQLException {
+    db = new SqliteDatabase(4, profile);
+    db.cleanTable();
+    gameBoard = new GameBoard('X');
+    gameBoard.joinGame();
+    gameBoard.move(1, 1, 1);
+    db.addGameBoardData(gameBoard);
+    
+    // A game to replay: a snapshot when player 2 joined, then three moves
+    GameBoard replayed = new GameBoard('X');
+    replayed.joinGame();
+    db.deleteGame("replay");
+    db.snapshotGame("replay", replayed);
+    int[][] moves = {{0, 0}, {1, 1}, {2, 2}};
+    for (int[] move : moves) {
+      int playerId = replayed.getTurn();
+      replayed.move(playerId, move[0], move[1]);
+      db.appendMove("replay", replayed, playerId, move[0], move[1]);
+    }
+    db.deleteGame("append");
+    db.commit();
+  }
+
+  @Benchmark
+  public void addGameBoardData() throws SQLException {
+    db.addGameBoardData(gameBoard);
+  }
+
+  @Benchmark
+  public GameBoard getGameBoardData() throws SQLException {
+    return db.getGameBoardData();
+  }
+
+  // Rewrites the same move log row, as only its size and not the table growth matters here
+  @Benchmark
+  public void appendMove() throws SQLException {
+    db.appendMove("append", gameBoard, 1, 1, 1);
+    db.commit();
+  }
+
+  @Benchmark
+  public GameBoard replayGame() throws SQLException {
+    return db.getGameBoardData("replay");
+  }
+
+  /**
+   * Empties and closes the database.
+   * @throws SQLException if problem with connection or statement
+   */
+  @TearDown
+  public void tearDown() throws SQLException {
+    db.cleanTable();
+    db.deleteGame("replay");
+    db.deleteGame("append");
+    db.commit();
+    db.closeConenction();
+  }
+}
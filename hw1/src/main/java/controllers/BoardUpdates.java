@@ -0,0 +1,182 @@
+package controllers;
+
+import java.util.concurrent.ConcurrentHashMap;
+import models.BoardSnapshot;
+import org.eclipse.jetty.websocket.api.Session;
+import utils.MetricsRegistry;
+
+public class BoardUpdates {
+
+  private final Broadcaster broadcaster;
+  private final ConcurrentHashMap<Session, Long> versions;
+  private final MetricsRegistry.Timer fanout;
+
+  /**
+   * Publishes board changes to the web sockets following a game.
+   * Sessions in the snapshot format receive the full board on every change, as the View expects.
+   * Sessions in the delta format receive the full board when they connect and afterwards only
+   * the cell that changed. Each delta names the version it applies to, and a session whose last
+   * known version does not match is sent a full snapshot instead.
+   * @param broadcaster sends the messages
+   */
+  public BoardUpdates(Broadcaster broadcaster) {
+    this.broadcaster = broadcaster;
+    this.versions = new ConcurrentHashMap<>();
+    this.fanout = new MetricsRegistry.Timer();
+  }
+
+  /**
+   * Publishes a change that is not a single move, e.g. a player joining.
+   * Must be called from the game's mailbox, so updates are sent in order.
+   * @param gameId ID of the game
+   * @param gameBoard the changed board
+   */
+  public void publishSnapshot(String gameId, BoardSnapshot gameBoard) {
+    long start = System.nanoTime();
+    broadcaster.broadcast(UiWebSocket.getSessions(gameId), gameBoard.toJson());
+    resetDeltaSessions(gameId, gameBoard);
+    fanout.recordSince(start);
+  }
+
+  /**
+   * Sends a full snapshot to the delta sessions only, e.g. when the game is replaced by a new
+   * board. The View is not told, as it only understands boards with both players.
+   * Must be called from the game's mailbox.
+   * @param gameId ID of the game
+   * @param gameBoard the new board
+   */
+  public void publishReset(String gameId, BoardSnapshot gameBoard) {
+    long start = System.nanoTime();
+    resetDeltaSessions(gameId, gameBoard);
+    fanout.recordSince(start);
+  }
+
+  /**
+   * Sends the board to the sessions following full boards only, e.g. after an invalid move.
+   * The board did not change, so the delta sessions have nothing to apply.
+   * Must be called from the game's mailbox.
+   * @param gameId ID of the game
+   * @param gameBoard the unchanged board
+   */
+  public void publishUnchanged(String gameId, BoardSnapshot gameBoard) {
+    long start = System.nanoTime();
+    broadcaster.broadcast(UiWebSocket.getSessions(gameId), gameBoard.toJson());
+    fanout.recordSince(start);
+  }
+
+  // Sends a full snapshot to the delta sessions
+  private void resetDeltaSessions(String gameId, BoardSnapshot gameBoard) {
+    String snapshot = null;
+    for (Session session : UiWebSocket.getDeltaSessions(gameId)) {
+      if (snapshot == null) {
+        snapshot = snapshotJson(gameBoard);
+      }
+      send(session, snapshot, gameBoard.getVersion());
+    }
+  }
+
+  /**
+   * Publishes a valid move. Must be called from the game's mailbox.
+   * @param gameId ID of the game
+   * @param baseVersion version of the board before the move
+   * @param gameBoard the board after the move
+   * @param x x coordinate of the move
+   * @param y y coordinate of the move
+   */
+  public void publishMove(String gameId, long baseVersion, BoardSnapshot gameBoard, int x, int y) {
+    long start = System.nanoTime();
+    broadcaster.broadcast(UiWebSocket.getSessions(gameId), gameBoard.toJson());
+
+    String delta = null;
+    String snapshot = null;
+    for (Session session : UiWebSocket.getDeltaSessions(gameId)) {
+      Long known = versions.get(session);
+      if (known != null && known == baseVersion) {
+        if (delta == null) {
+          delta = deltaJson(baseVersion, gameBoard, x, y);
+        }
+        send(session, delta, gameBoard.getVersion());
+      } else {
+        if (snapshot == null) {
+          snapshot = snapshotJson(gameBoard);
+        }
+        send(session, snapshot, gameBoard.getVersion());
+      }
+    }
+    fanout.recordSince(start);
+  }
+
+  /**
+   * Sends the full board to one session, e.g. when it connects or asks to resynchronize.
+   * Must be called from the game's mailbox.
+   * @param session session in the delta format
+   * @param gameBoard current board, or null if the game does not exist yet
+   */
+  public void sendSnapshot(Session session, BoardSnapshot gameBoard) {
+    if (gameBoard != null) {
+      send(session, snapshotJson(gameBoard), gameBoard.getVersion());
+    }
+  }
+
+  //  Returns the broadcaster that sends the messages
+  public Broadcaster broadcaster() {
+    return broadcaster;
+  }
+
+  //  Returns the timer of publishing a change to every session of a game
+  public MetricsRegistry.Timer getFanoutTimer() {
+    return fanout;
+  }
+
+  //  Stops tracking a session, e.g. when it closes
+  public void forget(Session session) {
+    versions.remove(session);
+    broadcaster.forget(session);
+  }
+
+  private void send(Session session, String message, long version) {
+    if (broadcaster.send(session, message)) {
+      versions.put(session, version);
+    } else {
+      versions.remove(session);
+    }
+  }
+
+  /**
+   * Encodes a move as {"type":"delta","base":3,"version":5,"x":0,"y":1,"mark":"X",
+   * "turn":2,"winner":0,"isDraw":false,"gameStarted":true}.
+   * @param baseVersion version of the board before the move
+   * @param gameBoard the board after the move
+   * @param x x coordinate of the move
+   * @param y y coordinate of the move
+   * @return JSON of the delta
+   */
+  public static String deltaJson(long baseVersion, BoardSnapshot gameBoard, int x, int y) {
+    return new StringBuilder(160)
+        .append("{\"type\":\"delta\",\"base\":").append(baseVersion)
+        .append(",\"version\":").append(gameBoard.getVersion())
+        .append(",\"x\":").append(x)
+        .append(",\"y\":").append(y)
+        .append(",\"mark\":\"").append(gameBoard.getMark(x, y))
+        .append("\",\"turn\":").append(gameBoard.getTurn())
+        .append(",\"winner\":").append(gameBoard.getWinner())
+        .append(",\"isDraw\":").append(gameBoard.isDraw())
+        .append(",\"gameStarted\":").append(gameBoard.isGameStarted())
+        .append('}')
+        .toString();
+  }
+
+  /**
+   * Encodes the full board as {"type":"snapshot","version":5,"board":{...}}.
+   * @param gameBoard the board
+   * @return JSON of the snapshot
+   */
+  public static String snapshotJson(BoardSnapshot gameBoard) {
+    String board = gameBoard.toJson();
+    return new StringBuilder(board.length() + 48)
+        .append("{\"type\":\"snapshot\",\"version\":").append(gameBoard.getVersion())
+        .append(",\"board\":").append(board)
+        .append('}')
+        .toString();
+  }
+}
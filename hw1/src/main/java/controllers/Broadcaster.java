@@ -0,0 +1,125 @@
+package controllers;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import utils.AsyncLog;
+
+public class Broadcaster {
+
+  public static final String MAX_BACKLOG_PROPERTY = "tictactoe.broadcast.maxBacklog";
+  private static final int DEFAULT_MAX_BACKLOG = 16;
+  private static final AsyncLog LOG = AsyncLog.getLog(Broadcaster.class);
+
+  private final int maxBacklog;
+  private final ConcurrentHashMap<Session, AtomicInteger> backlogs;
+  private final LongAdder sent;
+  private final LongAdder failed;
+  private final LongAdder dropped;
+  private final AsyncLog.Sampler failures;
+
+  /**
+   * Sends web socket messages without blocking the caller. Every session may have at most
+   * maxBacklog messages still being written. A session that falls further behind is too slow
+   * to keep up, so the message is dropped and the session is disconnected.
+   * @param maxBacklog most messages a session may have in flight
+   */
+  public Broadcaster(int maxBacklog) {
+    this.maxBacklog = maxBacklog;
+    this.backlogs = new ConcurrentHashMap<>();
+    this.sent = new LongAdder();
+    this.failed = new LongAdder();
+    this.dropped = new LongAdder();
+    this.failures = new AsyncLog.Sampler(LOG, 10, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Creates a broadcaster with the backlog limit from the tictactoe.broadcast.maxBacklog
+   * system property, or 16 if it is not set.
+   * @return new broadcaster
+   */
+  public static Broadcaster fromSystemProperties() {
+    return new Broadcaster(Integer.getInteger(MAX_BACKLOG_PROPERTY, DEFAULT_MAX_BACKLOG));
+  }
+
+  /**
+   * Sends the same message to every session. Returns as soon as the writes are queued.
+   * @param sessions sessions to send to
+   * @param message text to send, encoded once by the caller
+   */
+  public void broadcast(Iterable<Session> sessions, String message) {
+    for (Session session : sessions) {
+      send(session, message);
+    }
+  }
+
+  /**
+   * Queues a message for one session.
+   * @param session session to send to
+   * @param message text to send
+   * @return true if the message was queued, false if it was dropped
+   */
+  public boolean send(Session session, String message) {
+    if (!session.isOpen()) {
+      forget(session);
+      return false;
+    }
+
+    AtomicInteger backlog = backlogs.computeIfAbsent(session, s -> new AtomicInteger());
+    if (backlog.incrementAndGet() > maxBacklog) {
+      backlog.decrementAndGet();
+      dropped.increment();
+      LOG.debug("Closing web socket {} after {} pending messages", 
+          session.getRemoteAddress(), maxBacklog);
+      forget(session);
+      session.close(StatusCode.POLICY_VIOLATION, "Too many messages pending");
+      return false;
+    }
+
+    session.getRemote().sendString(message, new WriteCallback() {
+      @Override
+      public void writeSuccess() {
+        backlog.decrementAndGet();
+        sent.increment();
+      }
+
+      @Override
+      public void writeFailed(Throwable x) {
+        backlog.decrementAndGet();
+        failed.increment();
+        failures.warn("Could not send a message to a web socket: {}", x.toString());
+      }
+    });
+    return true;
+  }
+
+  //  Stops tracking a session, e.g. when it closes
+  public void forget(Session session) {
+    backlogs.remove(session);
+  }
+
+  //  Returns the number of messages in flight for the session
+  public int getBacklog(Session session) {
+    AtomicInteger backlog = backlogs.get(session);
+    return backlog == null ? 0 : backlog.get();
+  }
+
+  //  Returns the number of messages written successfully
+  public long getSent() {
+    return sent.sum();
+  }
+
+  //  Returns the number of messages that failed to be written
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  //  Returns the number of messages dropped because a session was too slow
+  public long getDropped() {
+    return dropped.sum();
+  }
+}
@@ -0,0 +1,83 @@
+package controllers;
+
+import java.sql.SQLException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class GameMailbox {
+
+  private static final int MAX_BATCH = 64;
+
+  private final Executor executor;
+  private final Queue<Runnable> tasks;
+  private final AtomicBoolean scheduled;
+
+  /**
+   * Mailbox of one game. Every change to the game is a task in the mailbox, and the tasks
+   * run one at a time in the order they were sent, so the game needs no lock. The mailbox 
+   * borrows a thread of the shared executor only while it has tasks, and runs up to 64 of 
+   * them before giving the thread to the next game.
+   * @param executor threads shared by all games
+   */
+  public GameMailbox(Executor executor) {
+    this.executor = executor;
+    this.tasks = new ConcurrentLinkedQueue<>();
+    this.scheduled = new AtomicBoolean();
+  }
+
+  /**
+   * A change to a game, run by the game's mailbox.
+   * @param <T> type of the result
+   */
+  public interface Task<T> {
+    T run() throws SQLException;
+  }
+
+  /**
+   * Sends a task to the mailbox.
+   * @param <T> type of the result
+   * @param task task to run after the tasks already sent
+   * @return future completed with the result of the task
+   */
+  public <T> CompletableFuture<T> send(Task<T> task) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    tasks.add(() -> {
+      try {
+        result.complete(task.run());
+      } catch (Throwable e) {
+        result.completeExceptionally(e);
+      }
+    });
+    this.schedule();
+    return result;
+  }
+
+  // Gives the mailbox a thread unless it already has one
+  private void schedule() {
+    if (scheduled.compareAndSet(false, true)) {
+      executor.execute(this::drain);
+    }
+  }
+
+  // Runs a batch of tasks, then lets go of the thread
+  private void drain() {
+    try {
+      for (int i = 0; i < MAX_BATCH; i++) {
+        Runnable task = tasks.poll();
+        if (task == null) {
+          break;
+        }
+        task.run();
+      }
+    } finally {
+      scheduled.set(false);
+    }
+    // A task sent after the last poll may have found the mailbox still scheduled
+    if (!tasks.isEmpty()) {
+      this.schedule();
+    }
+  }
+}
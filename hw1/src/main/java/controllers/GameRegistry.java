@@ -0,0 +1,228 @@
+package controllers;
+
+import io.javalin.http.ServiceUnavailableResponse;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import models.BoardSnapshot;
+import models.GameBoard;
+
+public class GameRegistry {
+
+  public static final String DEFAULT_GAME_ID = "default";
+  public static final String THREADS_PROPERTY = "tictactoe.mailbox.threads";
+  public static final String CALL_TIMEOUT_PROPERTY = "tictactoe.mailbox.callTimeoutMillis";
+  private static final int DEFAULT_CALL_TIMEOUT_MILLIS = 10_000;
+
+  private final ConcurrentHashMap<String, GameBoard> games;
+  private final ConcurrentHashMap<String, Published> snapshots;
+  private final ConcurrentHashMap<String, GameMailbox> mailboxes;
+  private final Executor executor;
+  private final long callTimeoutMillis;
+
+  /**
+   * Registry of all the games hosted by this server, keyed by game ID.
+   * Changes to a game run in the game's mailbox, one at a time, on a shared pool, so games 
+   * change in parallel without locks. After every change the mailbox publishes an immutable
+   * snapshot of the board, which any thread can read without locks.
+   * Mailbox tasks persist their changes, and with the SQLite backend a task may block on a
+   * full write-behind queue, or until its write is committed with SYNC durability. The pool
+   * is therefore sized for blocking work, with 4 threads per core and at least 16, so a few
+   * games waiting on the database do not hold up the others.
+   */
+  public GameRegistry() {
+    this(Executors.newFixedThreadPool(defaultThreads(), daemonThreads()), 
+        DEFAULT_CALL_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * Creates a registry whose mailboxes run on the given executor.
+   * @param executor threads shared by all games
+   */
+  public GameRegistry(Executor executor) {
+    this(executor, DEFAULT_CALL_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * Creates a registry whose mailboxes run on the given executor.
+   * @param executor threads shared by all games
+   * @param callTimeoutMillis how long call waits for a task before giving up
+   */
+  public GameRegistry(Executor executor, long callTimeoutMillis) {
+    this.games = new ConcurrentHashMap<>();
+    this.snapshots = new ConcurrentHashMap<>();
+    this.mailboxes = new ConcurrentHashMap<>();
+    this.executor = executor;
+    this.callTimeoutMillis = callTimeoutMillis;
+  }
+
+  /**
+   * Creates a registry configured by the tictactoe.mailbox.threads (default 4 per core, at
+   * least 16) and tictactoe.mailbox.callTimeoutMillis (default 10000) system properties.
+   * @return new registry
+   */
+  public static GameRegistry fromSystemProperties() {
+    int threads = Integer.getInteger(THREADS_PROPERTY, defaultThreads());
+    return new GameRegistry(Executors.newFixedThreadPool(threads, daemonThreads()),
+        Integer.getInteger(CALL_TIMEOUT_PROPERTY, DEFAULT_CALL_TIMEOUT_MILLIS));
+  }
+
+  // Mailbox tasks may block on the database, so there are more threads than cores
+  private static int defaultThreads() {
+    return Math.max(16, 4 * Runtime.getRuntime().availableProcessors());
+  }
+
+  private static ThreadFactory daemonThreads() {
+    AtomicInteger count = new AtomicInteger();
+    return task -> {
+      Thread thread = new Thread(task, "game-mailbox-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  //  Returns the live game board for the game ID, or null if there is no such game.
+  //  Only the game's mailbox may read or change it, other threads read the snapshot.
+  public GameBoard get(String gameId) {
+    return games.get(gameId);
+  }
+
+  //  Returns the latest published snapshot of the game, or null if there is no such game
+  public BoardSnapshot snapshot(String gameId) {
+    Published published = snapshots.get(gameId);
+    return published == null ? null : published.latest.get();
+  }
+
+  //  Registers the game board under the game ID, replacing any previous game, and
+  //  publishes its snapshot. The new board continues the version of the board it replaces.
+  public void put(String gameId, GameBoard gameBoard) {
+    GameBoard previous = games.put(gameId, gameBoard);
+    if (previous != null) {
+      gameBoard.continueVersion(previous.getVersion());
+    }
+    this.publish(gameId, gameBoard);
+  }
+
+  /**
+   * Publishes a snapshot of the game's board after a change, and wakes up the readers
+   * waiting for it.
+   * @param gameId ID of the game
+   * @param gameBoard the changed board of the game
+   * @return the published snapshot
+   */
+  public BoardSnapshot publish(String gameId, GameBoard gameBoard) {
+    BoardSnapshot snapshot = gameBoard.snapshot();
+    Published published = snapshots.computeIfAbsent(gameId, id -> new Published());
+    published.latest.set(snapshot);
+    published.next.getAndSet(new CompletableFuture<>()).complete(snapshot);
+    return snapshot;
+  }
+
+  /**
+   * Waits without blocking a thread for the game's board to move past a version.
+   * A version later than the current one, e.g. one from before a restart, waits for the 
+   * next change, so every waiter is answered by the next publish at the latest.
+   * @param gameId ID of the game
+   * @param version version the reader already has
+   * @return future of the first snapshot with a later version, already complete if the
+   *     board has moved on, or null if there is no such game
+   */
+  public CompletableFuture<BoardSnapshot> awaitVersion(String gameId, long version) {
+    Published published = snapshots.get(gameId);
+    if (published == null) {
+      return null;
+    }
+    // Take the next change before reading the latest snapshot, so a change published in
+    // between completes the future instead of being missed
+    CompletableFuture<BoardSnapshot> next = published.next.get();
+    BoardSnapshot latest = published.latest.get();
+    if (latest != null && latest.getVersion() > version) {
+      return CompletableFuture.completedFuture(latest);
+    }
+    long current = latest == null ? version : latest.getVersion();
+    return next.thenCompose(snapshot -> {
+      CompletableFuture<BoardSnapshot> later = snapshot.getVersion() > current 
+          ? null : awaitVersion(gameId, current);
+      // A game removed meanwhile answers with the snapshot it had
+      return later == null ? CompletableFuture.completedFuture(snapshot) : later;
+    });
+  }
+
+  //  Removes the game, returning its board or null if there was no such game
+  public GameBoard remove(String gameId) {
+    mailboxes.remove(gameId);
+    snapshots.remove(gameId);
+    return games.remove(gameId);
+  }
+
+  //  Returns the IDs of all registered games
+  public Set<String> gameIds() {
+    return games.keySet();
+  }
+
+  //  Returns the number of registered games
+  public int size() {
+    return games.size();
+  }
+
+  /**
+   * Returns the mailbox that runs the changes of the given game.
+   * A game always has the same mailbox until it is removed.
+   * @param gameId ID of the game
+   * @return the game's mailbox
+   */
+  public GameMailbox mailboxOf(String gameId) {
+    return mailboxes.computeIfAbsent(gameId, id -> new GameMailbox(executor));
+  }
+
+  /**
+   * Runs a task in the game's mailbox and waits for its result, up to
+   * tictactoe.mailbox.callTimeoutMillis. A task that is still queued or running by then
+   * is not cancelled, so its change may still be made.
+   * @param <T> type of the result
+   * @param gameId ID of the game
+   * @param task task that reads or changes the game
+   * @return result of the task
+   * @throws SQLException if the task failed to persist the game
+   * @throws ServiceUnavailableResponse if the task did not finish in time, answered with
+   *     503 Service Unavailable
+   */
+  public <T> T call(String gameId, GameMailbox.Task<T> task) throws SQLException {
+    try {
+      return this.mailboxOf(gameId).send(task).get(callTimeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      throw new ServiceUnavailableResponse("The game is busy, please try again");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServiceUnavailableResponse("Interrupted while waiting for the game");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof SQLException) {
+        throw (SQLException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /**
+   * The latest snapshot of a game, and the future that the next snapshot completes.
+   */
+  private static final class Published {
+    private final AtomicReference<BoardSnapshot> latest = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<BoardSnapshot>> next = 
+        new AtomicReference<>(new CompletableFuture<>());
+  }
+}
@@ -1,133 +1,511 @@
 package controllers;
 
 import io.javalin.Javalin;
-import java.io.IOException;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+import io.javalin.websocket.WsContext;
+import io.javalin.websocket.WsHandler;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.sql.SQLException;
-import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import models.BoardSnapshot;
 import models.GameBoard;
 import models.Message;
-import org.eclipse.jetty.websocket.api.Session;
-import utils.SqliteDatabase;
+import models.Move;
+import org.eclipse.jetty.server.Server;
+import utils.AsyncLog;
+import utils.GameRepository;
+import utils.MetricsRegistry;
 
 public class PlayGame {
 
+  public static final String LONG_POLL_PROPERTY = "tictactoe.http.longPollSeconds";
   private static final int PORT_NUMBER = 8080;
+  private static final int DEFAULT_LONG_POLL_SECONDS = 30;
+  private static final int DEFAULT_WIN_LENGTH = 5;
+  private static final AsyncLog LOG = AsyncLog.getLog(PlayGame.class);
   private static Javalin app;
-  private static GameBoard gameBoard;
-  private static SqliteDatabase db;
+  private static GameRegistry games;
+  private static BoardUpdates updates;
+  private static GameRepository repository;
+  private static MetricsRegistry metrics;
+  private static String epoch;
+  private static MetricsRegistry.Counter validMoves;
+  private static MetricsRegistry.Counter invalidMoves;
 
   /** Main method of the application.
    * @param args Command line arguments
-   * @throws SQLException if problem with connection or statement
+   * @throws SQLException if the game store cannot be opened or its games cannot be read
    */
   public static void main(final String[] args) throws SQLException {
-    
+
+    games = GameRegistry.fromSystemProperties();
+    // Versions start over when the games are restored, so ETags also name the run
+    epoch = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    updates = new BoardUpdates(Broadcaster.fromSystemProperties());
+    // The backend is chosen by tictactoe.persistence.backend. A store that cannot be opened
+    // or read stops the server, instead of running without persistence.
+    repository = GameRepository.fromSystemProperties(GameRegistry.DEFAULT_GAME_ID);
     try {
-      db = new SqliteDatabase();
-      gameBoard = db.getGameBoardData();
-    } catch (Exception e) {
-      gameBoard = null;
+      repository.loadAll().forEach(games::put);
+    } catch (SQLException e) {
+      LOG.error("Could not restore the games from the store", e);
+      repository.close();
+      repository = null;
+      throw e;
     }
-    
-    
+    if (games.size() == 0) {
+      LOG.debug("No game restored, the store is empty");
+    }
+
+    metrics = new MetricsRegistry();
+    registerMetrics();
+
+    VirtualThreadPool virtualThreads = VirtualThreadPool.fromSystemProperties();
     app = Javalin.create(config -> {
       config.addStaticFiles("/public");
+      if (virtualThreads != null) {
+        config.server(() -> new Server(virtualThreads));
+      }
+      config.requestLogger((ctx, executionTimeMs) -> {
+        String route = ctx.matchedPath();
+        metrics.timer("tictactoe_http_request_seconds", "Time to handle HTTP requests.",
+            "method", ctx.method(), "route", route.isEmpty() ? "unmatched" : route, 
+            "status", Integer.toString(ctx.status()))
+            .record((long) (executionTimeMs * 1_000_000));
+      });
     }).start(PORT_NUMBER);
-    
+
+    // Metrics in the Prometheus text format
+    app.get("/metrics", ctx -> {
+      ctx.contentType("text/plain; version=0.0.4; charset=utf-8");
+      ctx.result(metrics.scrape());
+    });
+
     // Redirect player to the View component and clean the database table before starting.
     app.get("/newgame", ctx -> {
-      db.cleanTable();
-      gameBoard = new GameBoard(null, null, false, -1, new char[3][3], 0, false);
-      db.addGameBoardData(gameBoard);
+      newGame(GameRegistry.DEFAULT_GAME_ID);
       ctx.redirect("tictactoe.html");
     });
-    
-    // Start the game by initializing a game board with player specified type (X or O) 
+
+    // Start the game by initializing a game board with player specified type (X or O)
     // from the request body
-    app.post("/startgame", ctx -> {
-      char type = ctx.formParam("type").charAt(0);
-      
-      if (type != 'X' && type != 'O') {
-        ctx.result("Please use either X or O to play.");
-        return;
-      }
-      
-      db.cleanTable();
-      gameBoard = new GameBoard(type);
-      db.addGameBoardData(gameBoard);
-      ctx.result(gameBoard.toJson());
-    });
-    
-    // End point for player 2 to join. Redirects to the View after joining the game. If player 2 
+    app.post("/startgame", ctx -> startGame(ctx, GameRegistry.DEFAULT_GAME_ID));
+
+    // End point for player 2 to join. Redirects to the View after joining the game. If player 2
     // tries to join the game before player 1 creates the game, simply return.
+    // With ?computer=true the computer joins as player 2, and player 1 returns to the View.
     app.get("/joingame", ctx -> {
-      if (gameBoard.getP1() == null) {
-        return;
-      } else if (gameBoard.isGameStarted()) {
-        ctx.result("Another user is playing the game.");
-        return;
+      if (joinGame(ctx, GameRegistry.DEFAULT_GAME_ID)) {
+        ctx.redirect(isComputer(ctx) ? "/tictactoe.html?p=1" : "/tictactoe.html?p=2");
       }
-      
-      gameBoard.joinGame();
-      db.addGameBoardData(gameBoard);
-      sendGameBoardToAllPlayers(gameBoard.toJson());  
-      ctx.redirect("/tictactoe.html?p=2");
     });
-    
+
     // End point to return the current state of game board.
-    app.get("/gameBoard", ctx -> {
-      if (gameBoard.getP1() == null) {
-        ctx.result("Game has not been created yet");
-        return;
-      }
-      ctx.result(gameBoard.toJson());
-    });
-    
-    // End point to handle player moves. 
+    app.get("/gameBoard", ctx -> getGameBoard(ctx, GameRegistry.DEFAULT_GAME_ID));
+
+    // End point to handle player moves.
     // Returns the validity response for the move as well as updates the board
-    app.post("/move/:playerId", ctx -> {
-      // If game board has not been created yet or the game has not been started yet, then return
-      if (gameBoard.getP1() == null) {
-        ctx.result("Game has not started yet");
-        return;
+    app.post("/move/:playerId", ctx -> move(ctx, GameRegistry.DEFAULT_GAME_ID));
+
+    // The same end points for any number of concurrent games, addressed by game ID.
+    // These return the game board instead of redirecting to the View.
+    // A game ID the store cannot keep is refused before the game is created.
+    app.before("/game/:gameId/*", ctx -> {
+      if (repository != null && !repository.acceptsGameId(ctx.pathParam("gameId"))) {
+        throw new BadRequestResponse("The game ID is too long to be stored.");
       }
-      
-      // Get playerId and x, y coordinates from the path parameter and request body
-      int playerId = Integer.parseInt(ctx.pathParam("playerId"));
-      int x = Integer.parseInt(ctx.formParam("x"));
-      int y = Integer.parseInt(ctx.formParam("y"));
-      
-      Message validityResponse = gameBoard.move(playerId, x, y);
-      ctx.result(validityResponse.toJson());
-      
-      sendGameBoardToAllPlayers(gameBoard.toJson());  
-      
-      // Only persist valid data after response in database
-      if (validityResponse.isMoveValidity()) {
-        db.addGameBoardData(gameBoard);
+    });
+    app.get("/game/:gameId/newgame", ctx -> {
+      ctx.result(newGame(ctx.pathParam("gameId")).toJsonBytes());
+    });
+    app.post("/game/:gameId/startgame", ctx -> startGame(ctx, ctx.pathParam("gameId")));
+    app.get("/game/:gameId/joingame", ctx -> {
+      String gameId = ctx.pathParam("gameId");
+      if (joinGame(ctx, gameId)) {
+        ctx.result(games.snapshot(gameId).toJsonBytes());
       }
     });
+    app.get("/game/:gameId/gameBoard", ctx -> getGameBoard(ctx, ctx.pathParam("gameId")));
+    app.post("/game/:gameId/move/:playerId", ctx -> move(ctx, ctx.pathParam("gameId")));
 
     // Web sockets - DO NOT DELETE or CHANGE
     app.ws("/gameboard", new UiWebSocket());
+    app.wsAfter("/gameboard", PlayGame::handleUpdates);
+
+    // Web sockets following a single game by game ID
+    app.ws("/gameboard/:gameId", new UiWebSocket());
+    app.wsAfter("/gameboard/:gameId", PlayGame::handleUpdates);
   }
 
-  /** Send message to all players.
-   * @param gameBoardJson Gameboard JSON
-   * @throws IOException Websocket message send IO Exception
+  /**
+   * Registers the counters that the broadcaster and the game repository already keep, and
+   * creates the move counters once so that moves do not look them up.
    */
-  private static void sendGameBoardToAllPlayers(final String gameBoardJson) {
-    Queue<Session> sessions = UiWebSocket.getSessions();
-    for (Session sessionPlayer : sessions) {
-      try {
-        sessionPlayer.getRemote().sendString(gameBoardJson);
-      } catch (IOException e) {
-        // Add logger here
+  private static void registerMetrics() {
+    String movesHelp = "Moves by the code of their response.";
+    validMoves = metrics.counter("tictactoe_moves_total", movesHelp, "code", "100");
+    invalidMoves = metrics.counter("tictactoe_moves_total", movesHelp, "code", "200");
+
+    Broadcaster broadcaster = updates.broadcaster();
+    String broadcastHelp = "Web socket messages by result.";
+    metrics.counter("tictactoe_broadcast_messages_total", broadcastHelp, 
+        broadcaster::getSent, "result", "sent");
+    metrics.counter("tictactoe_broadcast_messages_total", broadcastHelp, 
+        broadcaster::getFailed, "result", "failed");
+    metrics.counter("tictactoe_broadcast_messages_total", broadcastHelp, 
+        broadcaster::getDropped, "result", "dropped");
+    metrics.timer("tictactoe_broadcast_fanout_seconds", 
+        "Time to send a board change to every web socket of a game.", 
+        updates.getFanoutTimer());
+    metrics.gauge("tictactoe_games", "Games in memory.", games::size);
+
+    if (repository != null) {
+      repository.registerMetrics(metrics);
+    }
+  }
+
+  /**
+   * Sends the full board to delta sessions when they connect or send "snapshot" after missing
+   * an update, and stops tracking sessions when they close.
+   * @param ws web socket handler
+   */
+  private static void handleUpdates(WsHandler ws) {
+    ws.onConnect(ctx -> {
+      if (UiWebSocket.isDeltaFormat(ctx)) {
+        sendSnapshot(ctx);
+      }
+    });
+    ws.onMessage(ctx -> {
+      if (UiWebSocket.isDeltaFormat(ctx) && "snapshot".equals(ctx.message())) {
+        sendSnapshot(ctx);
+      }
+    });
+    ws.onClose(ctx -> updates.forget(ctx.session));
+  }
+
+  // Sends the current board of the web socket's game to the web socket, without waiting
+  private static void sendSnapshot(WsContext ctx) {
+    String gameId = UiWebSocket.topicOf(ctx);
+    if (games.snapshot(gameId) != null) {
+      // Sent from the mailbox, so the snapshot cannot overtake a delta of a later move
+      games.mailboxOf(gameId).send(() -> {
+        updates.sendSnapshot(ctx.session, games.snapshot(gameId));
+        return null;
+      });
+    }
+  }
+
+  /**
+   * Replaces the game with an empty board that has no players yet.
+   * @param gameId ID of the game
+   * @return snapshot of the new game board
+   * @throws SQLException if problem with connection or statement
+   */
+  private static BoardSnapshot newGame(String gameId) throws SQLException {
+    return games.call(gameId, () -> {
+      games.put(gameId, new GameBoard(null, null, false, -1, new char[3][3], 0, false));
+      BoardSnapshot snapshot = games.snapshot(gameId);
+      persistNewGame(gameId, snapshot);
+      updates.publishReset(gameId, snapshot);
+      return snapshot;
+    });
+  }
+
+  /**
+   * Starts a game for player 1 with the type (X or O) from the request body.
+   * The body may also set the board size (default 3) and the number of marks in a row
+   * that wins (default 5, or the size on smaller boards), e.g. size=15&winLength=5.
+   * @param ctx request context
+   * @param gameId ID of the game
+   * @throws SQLException if problem with connection or statement
+   */
+  private static void startGame(Context ctx, String gameId) throws SQLException {
+    char type = ctx.formParam("type").charAt(0);
+
+    if (type != 'X' && type != 'O') {
+      ctx.result("Please use either X or O to play.");
+      return;
+    }
+
+    String sizeMessage = "Please use a size between " + GameBoard.MIN_SIZE + " and " 
+        + GameBoard.MAX_SIZE + ", and a win length between " + GameBoard.MIN_SIZE 
+        + " and the size.";
+    int size;
+    int winLength;
+    try {
+      String sizeParam = ctx.formParam("size");
+      size = sizeParam == null ? GameBoard.DEFAULT_SIZE : Integer.parseInt(sizeParam);
+      String winLengthParam = ctx.formParam("winLength");
+      winLength = winLengthParam == null ? Math.min(size, DEFAULT_WIN_LENGTH) 
+          : Integer.parseInt(winLengthParam);
+    } catch (NumberFormatException e) {
+      ctx.status(400).result(sizeMessage);
+      return;
+    }
+    if (!GameBoard.isValidSize(size, winLength)) {
+      ctx.result(sizeMessage);
+      return;
+    }
+
+    ctx.result(games.call(gameId, () -> {
+      games.put(gameId, new GameBoard(type, size, winLength));
+      BoardSnapshot snapshot = games.snapshot(gameId);
+      persistNewGame(gameId, snapshot);
+      updates.publishReset(gameId, snapshot);
+      return snapshot.toJsonBytes();
+    }));
+  }
+
+  // Returns true if the request asks for the computer to play as player 2
+  private static boolean isComputer(Context ctx) {
+    return "true".equals(ctx.queryParam("computer"));
+  }
+
+  /**
+   * Joins player 2 to the game, or the computer if the request asks for it.
+   * @param ctx request context
+   * @param gameId ID of the game
+   * @return true if player 2 joined, false if the game cannot be joined
+   * @throws SQLException if problem with connection or statement
+   */
+  private static boolean joinGame(Context ctx, String gameId) throws SQLException {
+    if (games.snapshot(gameId) == null) {
+      return false;
+    }
+
+    boolean computer = isComputer(ctx);
+    // The reason player 2 cannot join, empty to respond with nothing, or null if joined
+    String refusal = games.call(gameId, () -> {
+      GameBoard gameBoard = games.get(gameId);
+      if (gameBoard == null || gameBoard.getP1() == null) {
+        return "";
+      } else if (gameBoard.isGameStarted()) {
+        return "Another user is playing the game.";
+      } else if (computer && !gameBoard.isClassic()) {
+        return "The computer only plays 3x3 games.";
+      }
+
+      gameBoard.joinGame(computer);
+      BoardSnapshot snapshot = games.publish(gameId, gameBoard);
+      persist(gameId, snapshot);
+      updates.publishSnapshot(gameId, snapshot);
+      return null;
+    });
+
+    if (refusal == null) {
+      return true;
+    } else if (!refusal.isEmpty()) {
+      ctx.result(refusal);
+    }
+    return false;
+  }
+
+  /**
+   * Returns the current state of the game board from its latest snapshot, without waiting
+   * for moves in progress. The ETag names the board version and the run of the server, and
+   * a request whose If-None-Match names the current ETag gets 304 Not Modified without a 
+   * body. Versions start over after a restart, so an ETag from an earlier run never 
+   * matches. With ?waitForVersion=N the request is parked, without holding a thread, until
+   * the version is past N, or past the current version if N is later, or 
+   * tictactoe.http.longPollSeconds (default 30) pass. A game that does not exist, or has
+   * no player yet, answers "Game has not been created yet" on both paths, without waiting.
+   * @param ctx request context
+   * @param gameId ID of the game
+   */
+  private static void getGameBoard(Context ctx, String gameId) {
+    if (ctx.queryParam("waitForVersion") == null) {
+      InputStream body = boardResult(ctx, games.snapshot(gameId));
+      if (body != null) {
+        ctx.result(body);
+      }
+      return;
+    }
+
+    long version = ctx.queryParam("waitForVersion", Long.class).get();
+    CompletableFuture<BoardSnapshot> changed = games.awaitVersion(gameId, version);
+    if (changed == null) {
+      ctx.result(boardResult(ctx, null));
+      return;
+    }
+    long timeout = Integer.getInteger(LONG_POLL_PROPERTY, DEFAULT_LONG_POLL_SECONDS);
+    ctx.result(changed.completeOnTimeout(null, timeout, TimeUnit.SECONDS)
+        .thenApply(snapshot -> boardResult(ctx, snapshot == null ? games.snapshot(gameId) 
+            : snapshot)));
+  }
+
+  /**
+   * Sets the ETag of the board and returns its JSON, or sets 304 Not Modified and returns
+   * null if the request's If-None-Match names the same version.
+   * @param ctx request context
+   * @param gameBoard snapshot of the board, or null if there is no such game
+   * @return the response body, or null for none
+   */
+  private static InputStream boardResult(Context ctx, BoardSnapshot gameBoard) {
+    if (gameBoard == null || !gameBoard.hasP1()) {
+      return new ByteArrayInputStream("Game has not been created yet".getBytes());
+    }
+
+    String etag = etagOf(gameBoard);
+    ctx.header("ETag", etag);
+    ctx.header("Cache-Control", "no-cache");
+    if (matchesEtag(ctx.header("If-None-Match"), etag)) {
+      ctx.status(304);
+      return null;
+    }
+    return new ByteArrayInputStream(gameBoard.toJsonBytes());
+  }
+
+  //  Returns the ETag of a board snapshot, e.g. "k3x9w1q2-12" for version 12 in this run
+  private static String etagOf(BoardSnapshot gameBoard) {
+    return "\"" + epoch + "-" + gameBoard.getVersion() + "\"";
+  }
+
+  /**
+   * Returns true if an If-None-Match header names the ETag. The header may list several
+   * ETags, weak ones included, or be * for any.
+   * @param ifNoneMatch value of the header, or null if there is none
+   * @param etag current ETag
+   * @return true if the client already has this version
+   */
+  private static boolean matchesEtag(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      String tag = candidate.trim();
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("*") || tag.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Handles a player move. Responds with the validity of the move and updates the board.
+   * @param ctx request context
+   * @param gameId ID of the game
+   * @throws SQLException if problem with connection or statement
+   */
+  private static void move(Context ctx, String gameId) throws SQLException {
+    // If game board has not been created yet or the game has not been started yet, then return
+    BoardSnapshot gameBoard = games.snapshot(gameId);
+    if (gameBoard == null || !gameBoard.hasP1()) {
+      ctx.result("Game has not started yet");
+      return;
+    }
+
+    // Get playerId and x, y coordinates from the path parameter and request body
+    int playerId = Integer.parseInt(ctx.pathParam("playerId"));
+    int x = Integer.parseInt(ctx.formParam("x"));
+    int y = Integer.parseInt(ctx.formParam("y"));
+
+    Message validityResponse = games.call(gameId, () -> {
+      // The game may have been replaced while the move waited in the mailbox
+      GameBoard current = games.get(gameId);
+      long baseVersion = current.getVersion();
+      Message response = current.move(playerId, x, y);
+      (response.isMoveValidity() ? validMoves : invalidMoves).increment();
+
+      // Players following full boards get the board even if the move was invalid
+      if (response.isMoveValidity()) {
+        publishMove(gameId, current, baseVersion, playerId, x, y);
+
+        // Against the computer, player 2 answers in the same task
+        Move reply = current.computerMove();
+        if (reply != null) {
+          long replyVersion = current.getVersion();
+          current.move(2, reply.getMoveX(), reply.getMoveY());
+          publishMove(gameId, current, replyVersion, 2, reply.getMoveX(), reply.getMoveY());
+        }
+      } else {
+        updates.publishUnchanged(gameId, games.snapshot(gameId));
       }
+      return response;
+    });
+    ctx.result(validityResponse.toJson());
+  }
+
+  /**
+   * Publishes a valid move to the readers and the web sockets, and persists it.
+   * Must be called from the game's mailbox.
+   * @param gameId ID of the game
+   * @param gameBoard the board after the move
+   * @param baseVersion version of the board before the move
+   * @param playerId player who made the move
+   * @param x x coordinate of the move
+   * @param y y coordinate of the move
+   * @throws SQLException if the move cannot be stored
+   */
+  private static void publishMove(String gameId, GameBoard gameBoard, long baseVersion, 
+      int playerId, int x, int y) throws SQLException {
+    BoardSnapshot snapshot = games.publish(gameId, gameBoard);
+    updates.publishMove(gameId, baseVersion, snapshot, x, y);
+    // Only persist valid data in database
+    persistMove(gameId, snapshot, playerId, x, y);
+  }
+
+  /**
+   * Stores the board of a game that has just been replaced, clearing the previous game.
+   * @param gameId ID of the game
+   * @param gameBoard snapshot of the new board
+   * @throws SQLException if the board cannot be stored
+   */
+  private static void persistNewGame(String gameId, BoardSnapshot gameBoard) 
+      throws SQLException {
+    if (repository != null) {
+      repository.replace(gameId, gameBoard);
+    }
+  }
+
+  /**
+   * Stores the board of a game after a change. Snapshots are immutable, so a backend that
+   * writes later does not need a copy.
+   * @param gameId ID of the game
+   * @param gameBoard snapshot of the changed board
+   * @throws SQLException if the board cannot be stored
+   */
+  private static void persist(String gameId, BoardSnapshot gameBoard) throws SQLException {
+    if (repository != null) {
+      repository.save(gameId, gameBoard);
+    }
+  }
+
+  /**
+   * Stores a valid move.
+   * @param gameId ID of the game
+   * @param gameBoard snapshot of the board after the move
+   * @param playerId player who made the move
+   * @param x x coordinate of the move
+   * @param y y coordinate of the move
+   * @throws SQLException if the move cannot be stored
+   */
+  private static void persistMove(String gameId, BoardSnapshot gameBoard, int playerId, 
+      int x, int y) throws SQLException {
+    if (repository != null) {
+      repository.saveMove(gameId, gameBoard, playerId, x, y);
     }
   }
 
+  /**
+   * Stops the server, then writes the pending game boards and closes the repository.
+   */
   public static void stop() {
     app.stop();
+    if (repository != null) {
+      try {
+        repository.close();
+      } catch (SQLException e) {
+        LOG.error("Could not write the pending game boards", e);
+      }
+      repository = null;
+    }
+    AsyncLog.flush(1, TimeUnit.SECONDS);
   }
 }
@@ -4,20 +4,27 @@ import io.javalin.websocket.WsCloseContext;
 import io.javalin.websocket.WsCloseHandler;
 import io.javalin.websocket.WsConnectContext;
 import io.javalin.websocket.WsConnectHandler;
+import io.javalin.websocket.WsContext;
 import io.javalin.websocket.WsHandler;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import org.eclipse.jetty.websocket.api.Session;
 
-/** Web socket class: DO NOT MODIFY.
+/** Web socket class. Sessions connected to /gameboard/:gameId are subscribed to that game,
+ * and sessions connected to /gameboard are subscribed to the default game.
+ * Sessions connected with ?format=delta receive move deltas instead of full boards.
  * @author Shirish Singh
  *
  */
 public class UiWebSocket implements Consumer<WsHandler>  {
 
-  // Store sessions to broadcast a message to all users
-  private static final Queue<Session> SESSIONS = new ConcurrentLinkedQueue<>();
+  // Store sessions per game to broadcast a message to the players of that game
+  private static final ConcurrentHashMap<String, Set<Session>> TOPICS =
+      new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, Set<Session>> DELTA_TOPICS =
+      new ConcurrentHashMap<>();
 
   @Override
   public void accept(final WsHandler t) {
@@ -27,8 +34,7 @@ public class UiWebSocket implements Consumer<WsHandler>  {
 
       @Override
       public void handleConnect(final WsConnectContext ctx) throws Exception {
-        // TODO Auto-generated method stub
-        SESSIONS.add(ctx.session);
+        subscribe(topicsOf(ctx), topicOf(ctx), ctx.session);
       }
 
     });
@@ -38,13 +44,73 @@ public class UiWebSocket implements Consumer<WsHandler>  {
 
       @Override
       public void handleClose(final WsCloseContext ctx) throws Exception {
-        SESSIONS.remove(ctx.session);
+        unsubscribe(topicsOf(ctx), topicOf(ctx), ctx.session);
       }
     });
   }
 
-  public static Queue<Session> getSessions() {
-    return SESSIONS;
+  /** Returns the game the web socket is connected to.
+   * @param ctx web socket context
+   * @return ID of the game
+   */
+  public static String topicOf(final WsContext ctx) {
+    String gameId = ctx.pathParamMap().get("gameId");
+    return gameId == null ? GameRegistry.DEFAULT_GAME_ID : gameId;
+  }
+
+  /** Returns true if the web socket asked for move deltas instead of full boards.
+   * @param ctx web socket context
+   * @return true for the delta format
+   */
+  public static boolean isDeltaFormat(final WsContext ctx) {
+    return "delta".equals(ctx.queryParam("format"));
+  }
+
+  // Returns the topics of the format the web socket asked for
+  private static ConcurrentHashMap<String, Set<Session>> topicsOf(final WsContext ctx) {
+    return isDeltaFormat(ctx) ? DELTA_TOPICS : TOPICS;
+  }
+
+  // Adds the session to the game's topic, creating the topic if needed
+  private static void subscribe(final ConcurrentHashMap<String, Set<Session>> topics,
+      final String gameId, final Session session) {
+    topics.compute(gameId, (id, sessions) -> {
+      Set<Session> topic = sessions == null ? ConcurrentHashMap.newKeySet() : sessions;
+      topic.add(session);
+      return topic;
+    });
+  }
+
+  // Removes the session from the game's topic, dropping the topic once it is empty
+  private static void unsubscribe(final ConcurrentHashMap<String, Set<Session>> topics,
+      final String gameId, final Session session) {
+    topics.computeIfPresent(gameId, (id, sessions) -> {
+      sessions.remove(session);
+      return sessions.isEmpty() ? null : sessions;
+    });
+  }
+
+  /** Returns the sessions subscribed to full boards of a game.
+   * @param gameId ID of the game
+   * @return live view of the sessions, empty if nobody follows the game
+   */
+  public static Set<Session> getSessions(final String gameId) {
+    Set<Session> sessions = TOPICS.get(gameId);
+    return sessions == null ? Collections.emptySet() : sessions;
+  }
+
+  /** Returns the sessions subscribed to move deltas of a game.
+   * @param gameId ID of the game
+   * @return live view of the sessions, empty if nobody follows the game
+   */
+  public static Set<Session> getDeltaSessions(final String gameId) {
+    Set<Session> sessions = DELTA_TOPICS.get(gameId);
+    return sessions == null ? Collections.emptySet() : sessions;
+  }
+
+  // Returns the sessions subscribed to the default game
+  public static Set<Session> getSessions() {
+    return getSessions(GameRegistry.DEFAULT_GAME_ID);
   }
 
 }
@@ -0,0 +1,118 @@
+package controllers;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.eclipse.jetty.util.thread.TryExecutor;
+import utils.AsyncLog;
+
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool, TryExecutor {
+
+  public static final String VIRTUAL_THREADS_PROPERTY = "tictactoe.server.virtualThreads";
+  private static final AsyncLog LOG = AsyncLog.getLog(VirtualThreadPool.class);
+
+  private final ThreadFactory factory;
+  private final AtomicInteger threads;
+  private final CountDownLatch stopped;
+
+  /**
+   * Jetty thread pool that runs every task on a new virtual thread, so requests that block
+   * on the database or on long polls do not hold a platform thread. There is no limit on the
+   * number of threads, so Jetty is never low on threads.
+   * @param factory factory of virtual threads
+   */
+  private VirtualThreadPool(ThreadFactory factory) {
+    this.factory = factory;
+    this.threads = new AtomicInteger();
+    this.stopped = new CountDownLatch(1);
+  }
+
+  /**
+   * Creates the pool if virtual threads are enabled with the tictactoe.server.virtualThreads
+   * system property and the JVM supports them (Java 21 or later).
+   * @return the pool, or null to use Jetty's default pool
+   */
+  public static VirtualThreadPool fromSystemProperties() {
+    if (!Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)) {
+      return null;
+    }
+    ThreadFactory factory = virtualThreadFactory();
+    if (factory == null) {
+      LOG.warn("Virtual threads need Java 21 or later, this is Java {}. "
+          + "Using the default thread pool.", Runtime.version());
+      return null;
+    }
+    LOG.info("Handling requests on virtual threads");
+    return new VirtualThreadPool(factory);
+  }
+
+  /**
+   * Returns a factory of virtual threads named jetty-virtual-N. The build targets a Java
+   * version without virtual threads, so the factory is looked up reflectively.
+   * @return the factory, or null if the JVM has no virtual threads
+   */
+  static ThreadFactory virtualThreadFactory() {
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+      builder = builderType.getMethod("name", String.class, long.class)
+          .invoke(builder, "jetty-virtual-", 0L);
+      Method factory = builderType.getMethod("factory");
+      return (ThreadFactory) factory.invoke(builder);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    Thread thread = factory.newThread(() -> {
+      try {
+        task.run();
+      } finally {
+        threads.decrementAndGet();
+      }
+    });
+    threads.incrementAndGet();
+    thread.start();
+  }
+
+  // A new virtual thread is always available
+  @Override
+  public boolean tryExecute(Runnable task) {
+    this.execute(task);
+    return true;
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    stopped.countDown();
+    super.doStop();
+  }
+
+  @Override
+  public void join() throws InterruptedException {
+    stopped.await();
+  }
+
+  //  Returns the number of running tasks
+  @Override
+  public int getThreads() {
+    return threads.get();
+  }
+
+  //  Returns 0, as virtual threads are not kept around when idle
+  @Override
+  public int getIdleThreads() {
+    return 0;
+  }
+
+  //  Returns false, as there is no limit on the number of virtual threads
+  @Override
+  public boolean isLowOnThreads() {
+    return false;
+  }
+}
@@ -0,0 +1,193 @@
+package models;
+
+public class BitBoard {
+
+  private static final int SIZE = 3;
+  private static final int FULL = (1 << (SIZE * SIZE)) - 1;
+
+  // Every row, column and diagonal as a mask over the 9 cells
+  private static final int[] LINES = {
+      0b000_000_111, 0b000_111_000, 0b111_000_000,
+      0b001_001_001, 0b010_010_010, 0b100_100_100,
+      0b100_010_001, 0b001_010_100
+  };
+
+  // WINNING[marks] is true if the marks contain a complete line
+  private static final boolean[] WINNING = new boolean[FULL + 1];
+
+  // The four directions a line can run in: down, right, and both diagonals
+  private static final int[][] DIRECTIONS = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+
+  static {
+    for (int marks = 0; marks <= FULL; marks++) {
+      for (int line : LINES) {
+        if ((marks & line) == line) {
+          WINNING[marks] = true;
+          break;
+        }
+      }
+    }
+  }
+
+  private final int size;
+  private final long[] xmarks;
+  private final long[] omarks;
+
+  /**
+   * Bit representation of the 3x3 board. Each player's marks are kept as a 9-bit mask,
+   * where cell (x, y) is bit x * 3 + y. Placing a mark, checking for a win and checking
+   * for a full board are a few bit operations with no allocation.
+   */
+  public BitBoard() {
+    this(SIZE);
+  }
+
+  /**
+   * Bit representation of a board of any size. Each player's marks are packed into
+   * size * size bits, cell (x, y) being bit x * size + y, so a 15x15 board takes four
+   * longs per player.
+   * @param size number of rows and columns
+   */
+  public BitBoard(int size) {
+    this.size = size;
+    this.xmarks = new long[(size * size + 63) >>> 6];
+    this.omarks = new long[this.xmarks.length];
+  }
+
+  /**
+   * Builds the bit representation of a character board state.
+   * Empty cells hold the null character, all other cells hold the player type.
+   * @param boardState square board of player types
+   * @return bit board with the same marks
+   */
+  public static BitBoard fromBoardState(char[][] boardState) {
+    BitBoard bits = new BitBoard(boardState.length);
+    for (int i = 0; i < boardState.length; i++) {
+      for (int j = 0; j < boardState[i].length; j++) {
+        if (boardState[i][j] != '\u0000') {
+          bits.place(boardState[i][j], i, j);
+        }
+      }
+    }
+    return bits;
+  }
+
+  //  Returns the mask of the cell at (x, y) of a 3x3 board
+  public static int cell(int x, int y) {
+    return 1 << (x * SIZE + y);
+  }
+
+  //  Returns the number of rows and columns
+  public int getSize() {
+    return size;
+  }
+
+  //  Returns the marks of the given player type as a 9-bit mask. Only for 3x3 boards.
+  public int getMarks(char type) {
+    return (int) marksOf(type)[0];
+  }
+
+  private long[] marksOf(char type) {
+    return type == 'X' ? xmarks : omarks;
+  }
+
+  //  Returns true if the given player type has marked the cell at (x, y)
+  public boolean isMarked(char type, int x, int y) {
+    int bit = x * size + y;
+    return (marksOf(type)[bit >>> 6] & (1L << bit)) != 0;
+  }
+
+  //  Returns true if nobody has marked the cell at (x, y)
+  public boolean isOpen(int x, int y) {
+    int bit = x * size + y;
+    return ((xmarks[bit >>> 6] | omarks[bit >>> 6]) & (1L << bit)) == 0;
+  }
+
+  //  Marks the cell at (x, y) for the given player type
+  public void place(char type, int x, int y) {
+    int bit = x * size + y;
+    marksOf(type)[bit >>> 6] |= 1L << bit;
+  }
+
+  //  Returns true if the given player type has a complete row, column or diagonal
+  public boolean hasWon(char type) {
+    return this.hasWon(type, size);
+  }
+
+  /**
+   * Returns true if the given player type has length marks in a row anywhere on the board.
+   * Scans every mark, so moves use hasLine() instead, which only looks at the new mark.
+   * @param type player type
+   * @param length marks in a row needed to win
+   * @return true if the player has won
+   */
+  public boolean hasWon(char type, int length) {
+    if (size == SIZE && length == SIZE) {
+      return WINNING[getMarks(type)];
+    }
+    for (int x = 0; x < size; x++) {
+      for (int y = 0; y < size; y++) {
+        if (isMarked(type, x, y) && hasLine(type, x, y, length)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if the mark at (x, y) is part of length marks in a row. Only the lines
+   * through (x, y) are examined, at most 2 * (length - 1) cells in each of 4 directions,
+   * so checking a move costs O(length) however large the board is.
+   * @param type player type
+   * @param x x coordinate of the mark
+   * @param y y coordinate of the mark
+   * @param length marks in a row needed to win
+   * @return true if the mark completes a line
+   */
+  public boolean hasLine(char type, int x, int y, int length) {
+    if (size == SIZE && length == SIZE) {
+      return WINNING[getMarks(type)];
+    }
+    for (int[] direction : DIRECTIONS) {
+      int run = 1 + run(type, x, y, direction[0], direction[1], length - 1)
+          + run(type, x, y, -direction[0], -direction[1], length - 1);
+      if (run >= length) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Counts the player's marks next to (x, y) in one direction, up to max
+  private int run(char type, int x, int y, int dx, int dy, int max) {
+    int count = 0;
+    int i = x + dx;
+    int j = y + dy;
+    while (count < max && i >= 0 && i < size && j >= 0 && j < size && isMarked(type, i, j)) {
+      count++;
+      i += dx;
+      j += dy;
+    }
+    return count;
+  }
+
+  //  Returns true if the 9-bit mask of one player's marks contains a complete line
+  public static boolean isWinning(int marks) {
+    return WINNING[marks];
+  }
+
+  //  Returns the number of marked cells
+  public int count() {
+    int count = 0;
+    for (int i = 0; i < xmarks.length; i++) {
+      count += Long.bitCount(xmarks[i] | omarks[i]);
+    }
+    return count;
+  }
+
+  //  Returns true if every cell has been marked
+  public boolean isFull() {
+    return count() == size * size;
+  }
+}
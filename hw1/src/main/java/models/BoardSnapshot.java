@@ -0,0 +1,153 @@
+package models;
+
+import java.nio.charset.StandardCharsets;
+import utils.BoardJsonWriter;
+
+public final class BoardSnapshot {
+
+  private static final char NO_PLAYER = '\u0000';
+
+  private final long version;
+  private final char p1Type;
+  private final int p1Id;
+  private final char p2Type;
+  private final int p2Id;
+  private final boolean gameStarted;
+  private final int turn;
+  private final int size;
+  private final int winLength;
+  private final char[] cells;
+  private final int winner;
+  private final boolean isDraw;
+  private final boolean computerP2;
+  private final byte[] jsonBytes;
+  private volatile String json;
+
+  /**
+   * Immutable copy of a game board at one version. Moves change the live board and then
+   * publish a new snapshot, so any thread can read a snapshot without locks and always sees
+   * a consistent board. The JSON is encoded once, when the snapshot is taken.
+   * @param gameBoard the board to copy, which must not change while it is copied
+   */
+  BoardSnapshot(GameBoard gameBoard) {
+    this.version = gameBoard.getVersion();
+    Player p1 = gameBoard.getP1();
+    this.p1Type = p1 == null ? NO_PLAYER : p1.getType();
+    this.p1Id = p1 == null ? 0 : p1.getId();
+    Player p2 = gameBoard.getP2();
+    this.p2Type = p2 == null ? NO_PLAYER : p2.getType();
+    this.p2Id = p2 == null ? 0 : p2.getId();
+    this.gameStarted = gameBoard.isGameStarted();
+    this.turn = gameBoard.getTurn();
+    this.size = gameBoard.getSize();
+    this.winLength = gameBoard.getWinLength();
+    char[][] boardState = gameBoard.getBoardState();
+    this.cells = new char[size * size];
+    for (int i = 0; i < size; i++) {
+      System.arraycopy(boardState[i], 0, cells, i * size, size);
+    }
+    this.winner = gameBoard.getWinner();
+    this.isDraw = gameBoard.isDraw();
+    this.computerP2 = gameBoard.isComputerP2();
+    this.jsonBytes = BoardJsonWriter.forThread().write(gameBoard).toByteArray();
+  }
+
+  //  Returns the version of the board this snapshot was taken at
+  public long getVersion() {
+    return version;
+  }
+
+  //  Returns true if player 1 has started the game
+  public boolean hasP1() {
+    return p1Type != NO_PLAYER;
+  }
+
+  //  Returns true if player 2 has joined the game
+  public boolean hasP2() {
+    return p2Type != NO_PLAYER;
+  }
+
+  //  Returns a copy of player 1, or null if the game has not been started
+  public Player getP1() {
+    return hasP1() ? new Player(p1Type, p1Id) : null;
+  }
+
+  //  Returns a copy of player 2, or null if nobody has joined
+  public Player getP2() {
+    return hasP2() ? new Player(p2Type, p2Id) : null;
+  }
+
+  //  Returns if the game has started
+  public boolean isGameStarted() {
+    return gameStarted;
+  }
+
+  //  Returns the current turn
+  public int getTurn() {
+    return turn;
+  }
+
+  //  Returns the number of rows and columns of the board
+  public int getSize() {
+    return size;
+  }
+
+  //  Returns the number of marks in a row that wins the game
+  public int getWinLength() {
+    return winLength;
+  }
+
+  //  Returns the mark at (x, y), or '\u0000' if the slot is open
+  public char getMark(int x, int y) {
+    return cells[x * size + y];
+  }
+
+  //  Returns the winner
+  public int getWinner() {
+    return winner;
+  }
+
+  //  Returns if the game is a draw
+  public boolean isDraw() {
+    return isDraw;
+  }
+
+  //  Returns true if the computer plays as player 2
+  public boolean isComputerP2() {
+    return computerP2;
+  }
+
+  /**
+   * Returns the UTF-8 encoded JSON of the board. Callers must not modify the array.
+   * @return JSON of the game board
+   */
+  public byte[] toJsonBytes() {
+    return jsonBytes;
+  }
+
+  /**
+   * Returns the JSON of the board, decoded once and shared by all readers.
+   * @return JSON of the game board
+   */
+  public String toJson() {
+    String decoded = json;
+    if (decoded == null) {
+      decoded = new String(jsonBytes, StandardCharsets.UTF_8);
+      json = decoded;
+    }
+    return decoded;
+  }
+
+  /**
+   * Creates a new, mutable game board from the snapshot, e.g. to persist it.
+   * @return a game board with the state of the snapshot
+   */
+  public GameBoard toGameBoard() {
+    char[][] boardState = new char[size][size];
+    for (int i = 0; i < size; i++) {
+      System.arraycopy(cells, i * size, boardState[i], 0, size);
+    }
+    return new GameBoard(getP1(), getP2(), gameStarted, turn, boardState, winner, 
+        isDraw, winLength, computerP2);
+  }
+}
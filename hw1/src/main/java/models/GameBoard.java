@@ -1,9 +1,11 @@
 package models;
 
-import com.google.gson.Gson;
-
 public class GameBoard {
 
+  public static final int DEFAULT_SIZE = 3;
+  public static final int MIN_SIZE = 3;
+  public static final int MAX_SIZE = 32;
+
   private Player p1;
   private Player p2;
   private boolean gameStarted;
@@ -11,6 +13,11 @@ public class GameBoard {
   private char[][] boardState;
   private int winner;
   private boolean isDraw;
+  private transient BitBoard bits;
+  private transient long version;
+  private transient BoardSnapshot snapshot;
+  private transient boolean computerP2;
+  private transient int winLength;
 
   /**
    * Representation of the game board. This keeps track of the players, if the game has started, 
@@ -19,17 +26,39 @@ public class GameBoard {
    * @param p1Type Player 1 type: X or O
    */
   public GameBoard(char p1Type) {
+    this(p1Type, DEFAULT_SIZE, DEFAULT_SIZE);
+  }
+  
+  /**
+   * Creates a new game board of any size, e.g. 15x15 with 5 in a row to win.
+   * @param p1Type Player 1 type: X or O
+   * @param size number of rows and columns, see isValidSize()
+   * @param winLength number of marks in a row that wins the game
+   */
+  public GameBoard(char p1Type, int size, int winLength) {
+    if (!isValidSize(size, winLength)) {
+      throw new IllegalArgumentException("Invalid board size " + size + " or win length " 
+          + winLength);
+    }
+    this.winLength = winLength;
     this.setP1(new Player(p1Type, 1));
     this.setP2(null);
     this.setGameStarted(false);
     this.setTurn(1);
-    this.setBoardState(new char[3][3]);
+    this.setBoardState(new char[size][size]);
     this.setWinner(0);
     this.setDraw(false);
   }
   
+  //  Returns true if a board may have the given size and win length: between 3 and 32
+  //  rows, and a win length between 3 and the size
+  public static boolean isValidSize(int size, int winLength) {
+    return size >= MIN_SIZE && size <= MAX_SIZE && winLength >= MIN_SIZE && winLength <= size;
+  }
+  
   /**
    * Another constructor of game board that creates a game board with specified parameters.
+   * A player wins with a complete row, column or diagonal.
    * @param p1 player 1 with id and type
    * @param p2 player 2 with id and type
    * @param gameStarted if game started or not
@@ -40,6 +69,41 @@ public class GameBoard {
    */
   public GameBoard(Player p1, Player p2, boolean gameStarted, 
       int turn, char[][] boardState, int winner, boolean isDraw) {
+    this(p1, p2, gameStarted, turn, boardState, winner, isDraw, boardState.length);
+  }
+  
+  /**
+   * Creates a game board with specified parameters and win length.
+   * @param p1 player 1 with id and type
+   * @param p2 player 2 with id and type
+   * @param gameStarted if game started or not
+   * @param turn 1 if p1, 2 if p2
+   * @param boardState the current board state, a square of any size
+   * @param winner 1 if p1, 2 if p2
+   * @param isDraw indicates if there is a draw
+   * @param winLength number of marks in a row that wins the game
+   */
+  public GameBoard(Player p1, Player p2, boolean gameStarted, 
+      int turn, char[][] boardState, int winner, boolean isDraw, int winLength) {
+    this(p1, p2, gameStarted, turn, boardState, winner, isDraw, winLength, false);
+  }
+  
+  /**
+   * Creates a game board with specified parameters, e.g. to restore a stored game.
+   * @param p1 player 1 with id and type
+   * @param p2 player 2 with id and type
+   * @param gameStarted if game started or not
+   * @param turn 1 if p1, 2 if p2
+   * @param boardState the current board state, a square of any size
+   * @param winner 1 if p1, 2 if p2
+   * @param isDraw indicates if there is a draw
+   * @param winLength number of marks in a row that wins the game
+   * @param computerP2 true if the computer plays as player 2
+   */
+  public GameBoard(Player p1, Player p2, boolean gameStarted, int turn, char[][] boardState, 
+      int winner, boolean isDraw, int winLength, boolean computerP2) {
+    this.winLength = winLength;
+    this.computerP2 = computerP2;
     this.setP1(p1);
     this.setP2(p2);
     this.setGameStarted(gameStarted);
@@ -49,6 +113,23 @@ public class GameBoard {
     this.setDraw(isDraw);
   }
 
+  /**
+   * Returns a deep copy of the game board, e.g. to persist a board that may keep changing.
+   * @return a new game board with the same state
+   */
+  public GameBoard copy() {
+    char[][] boardStateCopy = new char[boardState.length][];
+    for (int i = 0; i < boardState.length; i++) {
+      boardStateCopy[i] = boardState[i].clone();
+    }
+    return new GameBoard(copyOf(p1), copyOf(p2), gameStarted, turn, boardStateCopy, winner, 
+        isDraw, this.getWinLength(), computerP2);
+  }
+  
+  private static Player copyOf(Player player) {
+    return player == null ? null : new Player(player.getType(), player.getId());
+  }
+
   //  Returns Player 1
   public Player getP1() {
     return p1;
@@ -57,6 +138,7 @@ public class GameBoard {
   //  Sets Player 1
   public void setP1(Player p1) {
     this.p1 = p1;
+    this.version++;
   }
   
   //  Returns Player 2
@@ -67,6 +149,7 @@ public class GameBoard {
   //  Sets Player 2
   public void setP2(Player p2) {
     this.p2 = p2;
+    this.version++;
   }
 
   //  Returns if the game has started. True if game started. False if game has not started.
@@ -77,6 +160,7 @@ public class GameBoard {
   //  Sets if game has started or not.
   public void setGameStarted(boolean gameStarted) {
     this.gameStarted = gameStarted;
+    this.version++;
   }
   
   //  Returns the current turn 
@@ -87,6 +171,23 @@ public class GameBoard {
   //  Sets the turn (who is currently playing)
   public void setTurn(int turn) {
     this.turn = turn;
+    this.version++;
+  }
+  
+  //  Returns the marks of the given player type as a 9-bit mask. Only for 3x3 boards.
+  public int getMarks(char type) {
+    return this.bits().getMarks(type);
+  }
+  
+  //  Returns the number of rows and columns of the board
+  public int getSize() {
+    return boardState.length;
+  }
+  
+  //  Returns the number of marks in a row that wins the game. A board read from JSON,
+  //  which does not carry it, needs a complete row, column or diagonal.
+  public int getWinLength() {
+    return winLength == 0 ? boardState.length : winLength;
   }
   
   //  Returns board state
@@ -97,6 +198,8 @@ public class GameBoard {
   //  Sets the board state
   public void setBoardState(char[][] boardState) {
     this.boardState = boardState.clone();
+    this.bits = BitBoard.fromBoardState(this.boardState);
+    this.version++;
   }
   
   //  Returns the winner
@@ -107,6 +210,7 @@ public class GameBoard {
   //  Sets the winner of the game
   public void setWinner(int winner) {
     this.winner = winner;
+    this.version++;
   }
   
   //  Returns if the game is a draw or not
@@ -117,6 +221,7 @@ public class GameBoard {
   //  Sets to indicate if a game is a draw or not
   public void setDraw(boolean isDraw) {
     this.isDraw = isDraw;
+    this.version++;
   }
   
   /**
@@ -128,6 +233,40 @@ public class GameBoard {
     this.setGameStarted(true);
   }
   
+  /**
+   * Lets player 2 join the game, either a person or the computer.
+   * @param computer true if the computer plays as player 2, see computerMove()
+   */
+  public void joinGame(boolean computer) {
+    this.computerP2 = computer;
+    this.joinGame();
+  }
+  
+  //  Returns true if the computer plays as player 2
+  public boolean isComputerP2() {
+    return computerP2;
+  }
+  
+  /**
+   * Returns the move of the computer, looked up in the precomputed MinimaxTable in constant
+   * time. The computer never loses, and wins whenever player 1 gives it the chance.
+   * The table only covers 3x3 boards with 3 in a row.
+   * @return the move for player 2 to make, or null if it is not the computer's turn
+   */
+  public Move computerMove() {
+    if (!this.computerP2 || !this.gameStarted || this.isGameOver() || this.turn != 2
+        || !this.isClassic()) {
+      return null;
+    }
+    
+    BitBoard bits = this.bits();
+    int cell = MinimaxTable.bestMove(bits.getMarks(p2.getType()), bits.getMarks(p1.getType()));
+    if (cell < 0) {
+      return null;
+    }
+    return new Move(p2, cell / 3, cell % 3);
+  }
+  
   /**
    * Logic for determining player 2 type, which is opposite of that of player 1's.
    * @return player 2 type X or O
@@ -149,119 +288,106 @@ public class GameBoard {
    * @param y y coordinate of the move
    * @return a Message to alert the UI if the move was successful or not. 
    *            If not, display a custom message to suggest some error. 
+   *            The message is one of the shared Message constants and must not be
+   *            modified; its setters throw UnsupportedOperationException.
    */
   public Message move(int playerId, int x, int y) {
+    Message validity = this.validateMove(playerId, x, y);
+    if (!validity.isMoveValidity()) {
+      return validity;
+    }
+    
     // Check to see who the current player is by comparing the playerId and p1's id. 
     // If they are equal, then the current player is p1, if not p2
     Player currentPlayer = p1.getId() == playerId ? p1 : p2;
-    Move move = new Move(currentPlayer, x, y);
-    try {
-      if (this.isDraw() || this.winner != 0) {
-        throw new Exception("Game over!");
-      } else if (!this.gameStarted) {
-        throw new Exception("Game has not started yet!");
-      } else if (playerId != 1 && playerId != 2) {
-        throw new Exception("Not a valid player id!");
-      } else if (x < 0 || x > 2 || y < 0 || y > 2) {
-        throw new Exception("Not a valid move!");
-      } else if (playerId != this.getTurn()) {
-        // Player cannot make multiple moves in their turn
-        throw new Exception("Please wait for your turn!");
-      } else if (!this.isOpenSlot(move)) {
-        // Player must choose an open slot 
-        throw new Exception("Please select an open slot!");
-      }
-      
-      // The move is valid so assign X or O in the specified position
-      char type = currentPlayer.getType();
-      this.boardState[move.getMoveX()][move.getMoveY()] = type;
-      
-      // Check for win / draw
-      if (this.checkWinner(currentPlayer)) {
-        return new Message(true, 100, "");
-      } else if (this.checkDraw()) {
-        return new Message(true, 100, "");
-      }
-      
-      // Continue playing
-      int nextTurn = this.getTurn() == 1 ? 2 : 1;
-      this.setTurn(nextTurn);
-      return new Message(true, 100, "");
-    } catch (Exception e) {
-      return new Message(false, 200, e.getMessage());
+    
+    // The move is valid so assign X or O in the specified position
+    char type = currentPlayer.getType();
+    this.boardState[x][y] = type;
+    this.bits().place(type, x, y);
+    this.version++;
+    
+    // Check for win / draw. Only the lines through the new mark can have been completed.
+    if (this.checkWinner(currentPlayer, x, y) || this.checkDraw()) {
+      return Message.VALID;
     }
+    
+    // Continue playing
+    int nextTurn = this.getTurn() == 1 ? 2 : 1;
+    this.setTurn(nextTurn);
+    return Message.VALID;
   }
   
-  // Checks if specified position is open or not
-  private boolean isOpenSlot(Move move) {
-    return this.getBoardState()[move.getMoveX()][move.getMoveY()] == '\u0000';
+  /**
+   * Checks if a move can be made without changing the board. 
+   * Returns one of the shared Message constants, so rejecting a move does not allocate.
+   * @param playerId signifies who is making the move
+   * @param x x coordinate of the move
+   * @param y y coordinate of the move
+   * @return Message.VALID if the move can be made, otherwise the reason it cannot
+   */
+  private Message validateMove(int playerId, int x, int y) {
+    if (this.isDraw() || this.winner != 0) {
+      return Message.GAME_OVER;
+    } else if (!this.gameStarted) {
+      return Message.NOT_STARTED;
+    } else if (playerId != 1 && playerId != 2) {
+      return Message.INVALID_PLAYER;
+    } else if (x < 0 || x >= boardState.length || y < 0 || y >= boardState.length) {
+      return Message.INVALID_MOVE;
+    } else if (playerId != this.getTurn()) {
+      // Player cannot make multiple moves in their turn
+      return Message.NOT_YOUR_TURN;
+    } else if (!this.isOpenSlot(x, y)) {
+      // Player must choose an open slot 
+      return Message.SLOT_TAKEN;
+    }
+    return Message.VALID;
+  }
+  
+  // Checks if the position at (x, y) is open or not
+  private boolean isOpenSlot(int x, int y) {
+    return this.bits().isOpen(x, y);
+  }
+  
+  // Returns the bit representation of the board, rebuilding it if it was not set by a
+  // constructor (e.g. when the board was deserialized from JSON)
+  private BitBoard bits() {
+    if (this.bits == null) {
+      this.bits = BitBoard.fromBoardState(this.boardState);
+    }
+    return this.bits;
   }
   
   /**
-   * Checks for winner by checking the rows, columns, and diagonals.
-   * If there is a winner, set the winner and set gameStarted to false. 
+   * Checks if the current player's mark at (x, y) completed a line, looking only at the
+   * lines through that cell. If there is a winner, set the winner and set gameStarted to false.
    * @param currentPlayer determine the win for this player
+   * @param x x coordinate of the last mark
+   * @param y y coordinate of the last mark
    * @return if the current player has won
    */
-  private boolean checkWinner(Player currentPlayer) {
-    int currentPlayerId = currentPlayer.getId();
-    
-    for (int i = 0; i < boardState.length; i++) {
-      // Check column and if it is filled
-      if (boardState[i][0] != '\u0000'
-          && boardState[i][1] != '\u0000'
-          && boardState[i][2] != '\u0000'
-          && boardState[i][0] == boardState[i][1] && boardState[i][1] == boardState[i][2]) {
-        this.setWinner(currentPlayerId);
-        this.setGameStarted(false);
-        return true;
-      }
-      
-      // Check row and if it is filled
-      if (boardState[0][i] != '\u0000' 
-          && boardState[1][i] != '\u0000' 
-          && boardState[2][i] != '\u0000'
-          && boardState[0][i] == boardState[1][i] && boardState[1][i] == boardState[2][i]) {
-        this.setWinner(currentPlayerId);
-        this.setGameStarted(false);
-        return true;
-      }
-    }
-    
-    // Check left diagonal and if it is filled
-    if (boardState[0][0] != '\u0000' 
-        && boardState[1][1] != '\u0000' 
-        && boardState[2][2] != '\u0000'
-        && boardState[0][0] == boardState[1][1] && boardState[1][1] == boardState[2][2]) {
-      this.setWinner(currentPlayerId);
+  private boolean checkWinner(Player currentPlayer, int x, int y) {
+    if (this.bits().hasLine(currentPlayer.getType(), x, y, this.getWinLength())) {
+      this.setWinner(currentPlayer.getId());
       this.setGameStarted(false);
       return true;
     }
-    
-    // Check right diagonal and if it is filled
-    if (boardState[0][2] != '\u0000' 
-        && boardState[1][1] != '\u0000' 
-        && boardState[2][0] != '\u0000'
-        && boardState[0][2] == boardState[1][1] && boardState[1][1] == boardState[2][0]) {
-      this.setWinner(currentPlayerId);
-      this.setGameStarted(false);
-      return true;
-    }
-    
     return false;
   }
   
+  //  Returns true for the classic 3x3 board with 3 in a row
+  public boolean isClassic() {
+    return this.getSize() == DEFAULT_SIZE && this.getWinLength() == DEFAULT_SIZE;
+  }
+  
   /**
    * Check for draw. If everything has been filled, it is a draw
    * @return true if draw, otherwise false
    */
   private boolean checkDraw() {
-    for (int i = 0; i < boardState.length; i++) {
-      for (int j = 0; j < boardState[0].length; j++) {
-        if (boardState[i][j] == '\u0000') {
-          return false;
-        }
-      }
+    if (!this.bits().isFull()) {
+      return false;
     }
     
     this.setDraw(true);
@@ -269,9 +395,59 @@ public class GameBoard {
     return true;
   }
   
-  // Convert the game board to JSON format
+  //  Returns the number of moves made, which is the number of marks on the board
+  public int getMoveCount() {
+    return this.bits().count();
+  }
+  
+  //  Returns true if the game has a winner or is a draw
+  public boolean isGameOver() {
+    return this.winner != 0 || this.isDraw;
+  }
+  
+  //  Returns the version of the board, which changes whenever the board changes
+  public long getVersion() {
+    return version;
+  }
+  
+  //  Moves the version past the given one, e.g. when this board replaces a board with that
+  //  version, so that a version never names two different boards of a game
+  public void continueVersion(long previous) {
+    if (this.version <= previous) {
+      this.version = previous + 1;
+    }
+  }
+  
+  /**
+   * Returns an immutable snapshot of the current version of the board. The snapshot is 
+   * cached until the board changes, so repeated calls at the same version return the same
+   * snapshot. Must be called by the thread that changes the board.
+   * @return snapshot of the board
+   */
+  public BoardSnapshot snapshot() {
+    BoardSnapshot current = this.snapshot;
+    if (current == null || current.getVersion() != this.version) {
+      current = new BoardSnapshot(this);
+      this.snapshot = current;
+    }
+    return current;
+  }
+  
+  /**
+   * Convert the game board to UTF-8 encoded JSON. The bytes are written without reflection
+   * and cached with the snapshot of this version. Callers must not modify them.
+   * @return JSON of the game board
+   */
+  public byte[] toJsonBytes() {
+    return this.snapshot().toJsonBytes();
+  }
+  
+  /**
+   * Convert the game board to JSON format. The JSON is cached with the snapshot of this 
+   * version, so repeated reads of the same board version return the same string.
+   * @return JSON of the game board
+   */
   public String toJson() {
-    Gson gson = new Gson();
-    return gson.toJson(this);
+    return this.snapshot().toJson();
   }
 }
@@ -1,9 +1,24 @@
 package models;
 
-import com.google.gson.Gson;
+import utils.Json;
 
+/**
+ * Response to a move. The messages returned by GameBoard.move are the shared constants
+ * below, which every caller receives, so they are read-only: their setters throw 
+ * UnsupportedOperationException. Create a new Message to change one.
+ */
 public class Message {
 
+  // Shared results of GameBoard.move, one per outcome. They must not be modified.
+  public static final Message VALID = new Status(true, 100, "");
+  public static final Message GAME_OVER = new Status(false, 200, "Game over!");
+  public static final Message NOT_STARTED = new Status(false, 200, "Game has not started yet!");
+  public static final Message INVALID_PLAYER = new Status(false, 200, "Not a valid player id!");
+  public static final Message INVALID_MOVE = new Status(false, 200, "Not a valid move!");
+  public static final Message NOT_YOUR_TURN = 
+      new Status(false, 200, "Please wait for your turn!");
+  public static final Message SLOT_TAKEN = new Status(false, 200, "Please select an open slot!");
+
   private boolean moveValidity;
   private int code;
   private String message;
@@ -15,9 +30,9 @@ public class Message {
    * @param message message to be displayed
    */
   public Message(boolean moveValidity, int code, String message) {
-    setMoveValidity(moveValidity);
-    setCode(code);
-    setMessage(message);
+    this.moveValidity = moveValidity;
+    this.code = code;
+    this.message = message;
   }
 
 
@@ -53,7 +68,42 @@ public class Message {
   
   // Converts the Message into JSON format
   public String toJson() {
-    Gson gson = new Gson();
-    return gson.toJson(this);
+    return Json.GSON.toJson(this, Message.class);
+  }
+
+  /**
+   * Immutable message used for the shared constants, which are handed out to every caller.
+   */
+  private static final class Status extends Message {
+
+    private String json;
+
+    private Status(boolean moveValidity, int code, String message) {
+      super(moveValidity, code, message);
+    }
+
+    // The shared message never changes, so its JSON is built once
+    @Override
+    public String toJson() {
+      if (json == null) {
+        json = super.toJson();
+      }
+      return json;
+    }
+
+    @Override
+    public void setMoveValidity(boolean moveValidity) {
+      throw new UnsupportedOperationException("Shared message cannot be modified");
+    }
+
+    @Override
+    public void setCode(int code) {
+      throw new UnsupportedOperationException("Shared message cannot be modified");
+    }
+
+    @Override
+    public void setMessage(String message) {
+      throw new UnsupportedOperationException("Shared message cannot be modified");
+    }
   }
 }
@@ -0,0 +1,99 @@
+package models;
+
+import java.util.Arrays;
+
+public final class MinimaxTable {
+
+  private static final int CELLS = 9;
+  private static final int FULL = (1 << CELLS) - 1;
+  private static final int STATES = 19683;
+  private static final byte UNKNOWN = Byte.MIN_VALUE;
+
+  // TERNARY[marks] is the base-3 number with a 1 for every cell in the 9-bit mask
+  private static final int[] TERNARY = new int[FULL + 1];
+
+  // Indexed by the position seen by the player to move: their own marks are 1s and the
+  // opponent's marks are 2s of a base-3 number. SCORE is the minimax value for the player
+  // to move and BEST the cell to play, or -1 if the position is over or unreachable.
+  private static final byte[] SCORE = new byte[STATES];
+  private static final byte[] BEST = new byte[STATES];
+
+  static {
+    for (int marks = 0; marks <= FULL; marks++) {
+      int ternary = 0;
+      for (int cell = CELLS - 1; cell >= 0; cell--) {
+        ternary = ternary * 3 + ((marks >> cell) & 1);
+      }
+      TERNARY[marks] = ternary;
+    }
+    Arrays.fill(SCORE, UNKNOWN);
+    Arrays.fill(BEST, (byte) -1);
+    solve(0, 0);
+  }
+
+  private MinimaxTable() {
+  }
+
+  //  Returns the index of the position seen by the player to move
+  private static int indexOf(int own, int opponent) {
+    return TERNARY[own] + 2 * TERNARY[opponent];
+  }
+
+  /**
+   * Scores every position reachable from the given one by negamax, filling the tables.
+   * A win scores more the sooner it comes, and a loss less, so the computer wins as fast
+   * and loses as slowly as it can. Each position is solved once, about 5,500 in total.
+   * @param own marks of the player to move
+   * @param opponent marks of the player who moved last
+   * @return score of the position for the player to move
+   */
+  private static int solve(int own, int opponent) {
+    int index = indexOf(own, opponent);
+    if (SCORE[index] != UNKNOWN) {
+      return SCORE[index];
+    }
+
+    int open = FULL & ~(own | opponent);
+    int score;
+    if (BitBoard.isWinning(opponent)) {
+      score = -(Integer.bitCount(open) + 1);
+    } else if (open == 0) {
+      score = 0;
+    } else {
+      score = Integer.MIN_VALUE;
+      for (int cell = 0; cell < CELLS; cell++) {
+        if ((open & (1 << cell)) != 0) {
+          int reply = -solve(opponent, own | (1 << cell));
+          if (reply > score) {
+            score = reply;
+            BEST[index] = (byte) cell;
+          }
+        }
+      }
+    }
+    SCORE[index] = (byte) score;
+    return score;
+  }
+
+  /**
+   * Returns the best cell for the player to move, looked up without any search.
+   * Cell (x, y) is x * 3 + y, as in BitBoard.
+   * @param own 9-bit mask of the marks of the player to move
+   * @param opponent 9-bit mask of the other player's marks
+   * @return the cell to play, or -1 if the game is over or the position cannot be reached
+   */
+  public static int bestMove(int own, int opponent) {
+    return BEST[indexOf(own & FULL, opponent & FULL)];
+  }
+
+  /**
+   * Returns the score of the position for the player to move: positive if they can force
+   * a win, 0 if best play draws, negative if they lose against best play.
+   * @param own 9-bit mask of the marks of the player to move
+   * @param opponent 9-bit mask of the other player's marks
+   * @return score of the position, Byte.MIN_VALUE if it cannot be reached
+   */
+  public static int score(int own, int opponent) {
+    return SCORE[indexOf(own & FULL, opponent & FULL)];
+  }
+}
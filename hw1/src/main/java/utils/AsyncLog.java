@@ -0,0 +1,262 @@
+package utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public final class AsyncLog {
+
+  public static final String BUFFER_SIZE_PROPERTY = "tictactoe.log.bufferSize";
+  private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  private static final BlockingQueue<Event> BUFFER = new ArrayBlockingQueue<>(
+      Math.max(16, Integer.getInteger(BUFFER_SIZE_PROPERTY, DEFAULT_BUFFER_SIZE)));
+  private static final LongAdder DROPPED = new LongAdder();
+  private static final Logger SELF = LoggerFactory.getLogger(AsyncLog.class);
+
+  static {
+    Thread writer = new Thread(AsyncLog::drain, "async-log");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  private enum Level {
+    DEBUG, INFO, WARN, ERROR
+  }
+
+  private final Logger logger;
+  private final boolean debugEnabled;
+  private final boolean infoEnabled;
+
+  /**
+   * Logger that hands messages to a background thread instead of writing them on the
+   * caller's thread. The level is checked before anything is queued, and messages are
+   * formatted by the background thread with the slf4j {} placeholders, so a disabled level
+   * costs one branch. Messages are queued in a fixed-size ring buffer shared by all loggers;
+   * when it is full, messages are dropped and counted rather than blocking the caller.
+   * @param logger slf4j logger that writes the messages
+   */
+  private AsyncLog(Logger logger) {
+    this.logger = logger;
+    this.debugEnabled = logger.isDebugEnabled();
+    this.infoEnabled = logger.isInfoEnabled();
+  }
+
+  /**
+   * Returns the logger of a class.
+   * @param type class that logs
+   * @return the logger
+   */
+  public static AsyncLog getLog(Class<?> type) {
+    return new AsyncLog(LoggerFactory.getLogger(type));
+  }
+
+  //  Returns true if debug messages are logged
+  public boolean isDebugEnabled() {
+    return debugEnabled;
+  }
+
+  //  Logs a debug message
+  public void debug(String message) {
+    if (debugEnabled) {
+      enqueue(Level.DEBUG, message, null);
+    }
+  }
+
+  //  Logs a debug message with one argument
+  public void debug(String format, Object arg) {
+    if (debugEnabled) {
+      enqueue(Level.DEBUG, format, new Object[] {arg});
+    }
+  }
+
+  //  Logs a debug message with two arguments
+  public void debug(String format, Object arg1, Object arg2) {
+    if (debugEnabled) {
+      enqueue(Level.DEBUG, format, new Object[] {arg1, arg2});
+    }
+  }
+
+  //  Logs an info message
+  public void info(String message) {
+    if (infoEnabled) {
+      enqueue(Level.INFO, message, null);
+    }
+  }
+
+  //  Logs an info message with arguments
+  public void info(String format, Object... args) {
+    if (infoEnabled) {
+      enqueue(Level.INFO, format, args);
+    }
+  }
+
+  //  Logs a warning with arguments. A Throwable as last argument is logged with its trace.
+  public void warn(String format, Object... args) {
+    if (logger.isWarnEnabled()) {
+      enqueue(Level.WARN, format, args);
+    }
+  }
+
+  //  Logs an error with arguments. A Throwable as last argument is logged with its trace.
+  public void error(String format, Object... args) {
+    if (logger.isErrorEnabled()) {
+      enqueue(Level.ERROR, format, args);
+    }
+  }
+
+  private void enqueue(Level level, String format, Object[] args) {
+    if (!BUFFER.offer(new Event(logger, level, format, args, null))) {
+      DROPPED.increment();
+    }
+  }
+
+  /**
+   * Waits until the messages logged so far have been written, e.g. before shutting down.
+   * @param timeout longest time to wait
+   * @param unit unit of the timeout
+   * @return true if the messages were written in time
+   */
+  public static boolean flush(long timeout, TimeUnit unit) {
+    CountDownLatch written = new CountDownLatch(1);
+    try {
+      if (!BUFFER.offer(new Event(null, null, null, null, written), timeout, unit)) {
+        return false;
+      }
+      return written.await(timeout, unit);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  //  Returns the number of messages dropped because the buffer was full
+  public static long getDropped() {
+    return DROPPED.sum();
+  }
+
+  // Background thread: writes the queued messages and reports dropped ones
+  private static void drain() {
+    long reported = 0;
+    while (true) {
+      Event event;
+      try {
+        event = BUFFER.take();
+      } catch (InterruptedException e) {
+        continue;
+      }
+
+      long dropped = DROPPED.sum();
+      if (dropped != reported) {
+        SELF.warn("{} log messages dropped because the log buffer was full", 
+            dropped - reported);
+        reported = dropped;
+      }
+
+      if (event.written != null) {
+        event.written.countDown();
+        continue;
+      }
+      try {
+        event.write();
+      } catch (RuntimeException e) {
+        // A failing toString of an argument must not stop the writer
+        SELF.warn("Could not write a log message: {}", event.format, e);
+      }
+    }
+  }
+
+  /**
+   * A queued message, or a marker that flush waits for.
+   */
+  private static final class Event {
+    private final Logger logger;
+    private final Level level;
+    private final String format;
+    private final Object[] args;
+    private final CountDownLatch written;
+
+    private Event(Logger logger, Level level, String format, Object[] args, 
+        CountDownLatch written) {
+      this.logger = logger;
+      this.level = level;
+      this.format = format;
+      this.args = args;
+      this.written = written;
+    }
+
+    private void write() {
+      Object[] arguments = args == null ? new Object[0] : args;
+      switch (level) {
+        case DEBUG:
+          logger.debug(format, arguments);
+          break;
+        case INFO:
+          logger.info(format, arguments);
+          break;
+        case WARN:
+          logger.warn(format, arguments);
+          break;
+        default:
+          logger.error(format, arguments);
+      }
+    }
+  }
+
+  /**
+   * Logs a recurring warning at most once per interval, with the number of occurrences
+   * that were not logged since, so a failure that repeats on every request does not flood
+   * the log.
+   */
+  public static final class Sampler {
+    private final AsyncLog log;
+    private final long intervalNanos;
+    private final AtomicLong nextNanos;
+    private final LongAdder suppressed;
+
+    /**
+     * Creates a sampler.
+     * @param log logger of the warnings
+     * @param interval shortest time between two logged warnings
+     * @param unit unit of the interval
+     */
+    public Sampler(AsyncLog log, long interval, TimeUnit unit) {
+      this.log = log;
+      this.intervalNanos = unit.toNanos(interval);
+      this.nextNanos = new AtomicLong(System.nanoTime());
+      this.suppressed = new LongAdder();
+    }
+
+    /**
+     * Logs the warning if none was logged during the interval, otherwise counts it.
+     * @param format message with {} placeholders
+     * @param arg argument of the message
+     */
+    public void warn(String format, Object arg) {
+      long skipped = this.sample(System.nanoTime());
+      if (skipped >= 0) {
+        log.warn(format + " ({} similar warnings suppressed)", arg, skipped);
+      }
+    }
+
+    /**
+     * Decides whether a warning at the given time is logged.
+     * @param now current time in nanoseconds
+     * @return number of warnings suppressed since the last logged one, or -1 if this
+     *     warning is suppressed too
+     */
+    private long sample(long now) {
+      long next = nextNanos.get();
+      if (now - next >= 0 && nextNanos.compareAndSet(next, now + intervalNanos)) {
+        return suppressed.sumThenReset();
+      }
+      suppressed.increment();
+      return -1;
+    }
+  }
+}
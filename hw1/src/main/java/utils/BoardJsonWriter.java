@@ -0,0 +1,196 @@
+package utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import models.GameBoard;
+import models.Player;
+
+public final class BoardJsonWriter {
+
+  private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+  private static final ThreadLocal<BoardJsonWriter> WRITERS =
+      ThreadLocal.withInitial(BoardJsonWriter::new);
+
+  private byte[] buf;
+  private int len;
+
+  /**
+   * Writes the JSON of a GameBoard straight into a reusable byte array, without reflection
+   * or an intermediate String. The output is byte for byte what Gson writes for the board.
+   * A writer is not thread-safe; use forThread() to get the calling thread's writer.
+   */
+  public BoardJsonWriter() {
+    // A 3x3 board with both players is about 200 bytes
+    this.buf = new byte[256];
+    this.len = 0;
+  }
+
+  //  Returns the writer owned by the calling thread
+  public static BoardJsonWriter forThread() {
+    return WRITERS.get();
+  }
+
+  /**
+   * Replaces the contents of the buffer with the JSON of the game board.
+   * @param gameBoard board to write
+   * @return this writer
+   */
+  public BoardJsonWriter write(GameBoard gameBoard) {
+    len = 0;
+    ascii("{");
+    if (gameBoard.getP1() != null) {
+      ascii("\"p1\":");
+      player(gameBoard.getP1());
+      ascii(",");
+    }
+    if (gameBoard.getP2() != null) {
+      ascii("\"p2\":");
+      player(gameBoard.getP2());
+      ascii(",");
+    }
+    ascii("\"gameStarted\":");
+    bool(gameBoard.isGameStarted());
+    ascii(",\"turn\":");
+    number(gameBoard.getTurn());
+    ascii(",\"boardState\":[");
+    char[][] boardState = gameBoard.getBoardState();
+    for (int i = 0; i < boardState.length; i++) {
+      if (i > 0) {
+        ascii(",");
+      }
+      ascii("[");
+      for (int j = 0; j < boardState[i].length; j++) {
+        if (j > 0) {
+          ascii(",");
+        }
+        string(boardState[i][j]);
+      }
+      ascii("]");
+    }
+    ascii("],\"winner\":");
+    number(gameBoard.getWinner());
+    ascii(",\"isDraw\":");
+    bool(gameBoard.isDraw());
+    ascii("}");
+    return this;
+  }
+
+  //  Returns a copy of the bytes written
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buf, len);
+  }
+
+  private void player(Player player) {
+    ascii("{\"type\":");
+    string(player.getType());
+    ascii(",\"id\":");
+    number(player.getId());
+    ascii("}");
+  }
+
+  private void bool(boolean value) {
+    ascii(value ? "true" : "false");
+  }
+
+  private void number(int value) {
+    ensure(11);
+    if (value < 0) {
+      buf[len++] = '-';
+    } else {
+      value = -value;
+    }
+    // Work with the negative value so that Integer.MIN_VALUE does not overflow
+    int start = len;
+    do {
+      buf[len++] = (byte) ('0' - (value % 10));
+      value /= 10;
+    } while (value != 0);
+    for (int i = start, j = len - 1; i < j; i++, j--) {
+      byte tmp = buf[i];
+      buf[i] = buf[j];
+      buf[j] = tmp;
+    }
+  }
+
+  // Writes a one character string, escaped the way Gson's HTML-safe writer does
+  private void string(char c) {
+    ensure(8);
+    buf[len++] = '"';
+    switch (c) {
+      case '"':
+      case '\\':
+        buf[len++] = '\\';
+        buf[len++] = (byte) c;
+        break;
+      case '\t':
+        escape('t');
+        break;
+      case '\b':
+        escape('b');
+        break;
+      case '\n':
+        escape('n');
+        break;
+      case '\r':
+        escape('r');
+        break;
+      case '\f':
+        escape('f');
+        break;
+      case '<':
+      case '>':
+      case '&':
+      case '=':
+      case '\'':
+      case '\u2028':
+      case '\u2029':
+        unicode(c);
+        break;
+      default:
+        if (c < 0x20) {
+          unicode(c);
+        } else if (c < 0x80) {
+          buf[len++] = (byte) c;
+        } else if (c < 0x800) {
+          buf[len++] = (byte) (0xC0 | (c >> 6));
+          buf[len++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+          // A lone surrogate cannot be encoded, as in String.getBytes
+          buf[len++] = '?';
+        } else {
+          buf[len++] = (byte) (0xE0 | (c >> 12));
+          buf[len++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+          buf[len++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+    buf[len++] = '"';
+  }
+
+  private void escape(char c) {
+    buf[len++] = '\\';
+    buf[len++] = (byte) c;
+  }
+
+  private void unicode(char c) {
+    buf[len++] = '\\';
+    buf[len++] = 'u';
+    buf[len++] = HEX[(c >> 12) & 0xF];
+    buf[len++] = HEX[(c >> 8) & 0xF];
+    buf[len++] = HEX[(c >> 4) & 0xF];
+    buf[len++] = HEX[c & 0xF];
+  }
+
+  private void ascii(String s) {
+    int n = s.length();
+    ensure(n);
+    for (int i = 0; i < n; i++) {
+      buf[len++] = (byte) s.charAt(i);
+    }
+  }
+
+  private void ensure(int extra) {
+    if (len + extra > buf.length) {
+      buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package utils;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import models.BoardSnapshot;
+import models.GameBoard;
+
+/**
+ * Stores the games so that they survive a restart. Writes take immutable snapshots, so a
+ * backend may keep them or write them later without copying the live board. Writes are
+ * made from the mailbox of their game, so writes of one game never overlap, while writes
+ * of different games may.
+ */
+public interface GameRepository {
+
+  String BACKEND_PROPERTY = "tictactoe.persistence.backend";
+
+  /**
+   * Where the games are stored.
+   * MEMORY keeps them in the process only, e.g. for tests and as a baseline to benchmark
+   * the others against.
+   * SQLITE writes them to tictactoe.db through the write-behind queue.
+   * MAPPED writes them as fixed-size records into a memory-mapped file.
+   */
+  enum Backend {
+    MEMORY, SQLITE, MAPPED
+  }
+
+  /**
+   * Stores the board of a game after a change, replacing the previous board.
+   * @param gameId ID of the game
+   * @param gameBoard snapshot of the changed board
+   * @throws SQLException if the board cannot be stored
+   */
+  void save(String gameId, BoardSnapshot gameBoard) throws SQLException;
+
+  /**
+   * Stores the board of a game after a valid move. Backends that log moves only append the
+   * move, the others store the whole board.
+   * @param gameId ID of the game
+   * @param gameBoard snapshot of the board after the move
+   * @param playerId player who made the move
+   * @param x x coordinate of the move
+   * @param y y coordinate of the move
+   * @throws SQLException if the move cannot be stored
+   */
+  default void saveMove(String gameId, BoardSnapshot gameBoard, int playerId, int x, int y)
+      throws SQLException {
+    this.save(gameId, gameBoard);
+  }
+
+  /**
+   * Replaces a game with a new board, dropping everything stored for the previous game.
+   * @param gameId ID of the game
+   * @param gameBoard snapshot of the new board
+   * @throws SQLException if the board cannot be stored
+   */
+  default void replace(String gameId, BoardSnapshot gameBoard) throws SQLException {
+    this.delete(gameId);
+    this.save(gameId, gameBoard);
+  }
+
+  /**
+   * Loads the latest stored board of a game.
+   * @param gameId ID of the game
+   * @return a new game board, or null if the game is not stored
+   * @throws SQLException if the board cannot be read
+   */
+  GameBoard load(String gameId) throws SQLException;
+
+  /**
+   * Loads every stored game, e.g. on startup. Backends that can read all games at once
+   * override this instead of loading them one by one.
+   * @return the game boards by game ID
+   * @throws SQLException if the games cannot be read
+   */
+  default Map<String, GameBoard> loadAll() throws SQLException {
+    Map<String, GameBoard> games = new LinkedHashMap<>();
+    for (String gameId : this.list()) {
+      GameBoard gameBoard = this.load(gameId);
+      if (gameBoard != null) {
+        games.put(gameId, gameBoard);
+      }
+    }
+    return games;
+  }
+
+  /**
+   * Deletes a game.
+   * @param gameId ID of the game
+   * @throws SQLException if the game cannot be deleted
+   */
+  void delete(String gameId) throws SQLException;
+
+  /**
+   * Returns the IDs of the stored games.
+   * @return game IDs
+   * @throws SQLException if the games cannot be read
+   */
+  List<String> list() throws SQLException;
+
+  /**
+   * Returns true if the backend can store a game with the given ID. A game it cannot store
+   * is refused before it is created, instead of living only in memory.
+   * @param gameId ID of the game
+   * @return true if the ID can be stored
+   */
+  default boolean acceptsGameId(String gameId) {
+    return true;
+  }
+
+  /**
+   * Registers the counters the backend keeps, if any.
+   * @param metrics registry to add them to
+   */
+  default void registerMetrics(MetricsRegistry metrics) {
+  }
+
+  /**
+   * Writes whatever is still pending and releases the storage.
+   * @throws SQLException if the pending writes fail
+   */
+  void close() throws SQLException;
+
+  /**
+   * Opens the backend set by the tictactoe.persistence.backend system property (default
+   * SQLITE).
+   * @param defaultGameId the game that the SQLite backend stores in its single-game table
+   *     when it does not keep the move log
+   * @return the opened repository
+   * @throws SQLException if the storage cannot be opened
+   */
+  static GameRepository fromSystemProperties(String defaultGameId) throws SQLException {
+    Backend backend = Backend.valueOf(
+        System.getProperty(BACKEND_PROPERTY, Backend.SQLITE.name()));
+    switch (backend) {
+      case MEMORY:
+        return new InMemoryGameRepository();
+      case MAPPED:
+        return MappedGameRepository.fromSystemProperties();
+      default:
+        return SqliteGameRepository.fromSystemProperties(defaultGameId);
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import models.BoardSnapshot;
+import models.GameBoard;
+
+public class InMemoryGameRepository implements GameRepository {
+
+  private final ConcurrentHashMap<String, BoardSnapshot> games;
+
+  /**
+   * Keeps the latest snapshot of every game in memory. Snapshots are immutable, so saving
+   * one is a single map update. Nothing survives a restart.
+   */
+  public InMemoryGameRepository() {
+    this.games = new ConcurrentHashMap<>();
+  }
+
+  @Override
+  public void save(String gameId, BoardSnapshot gameBoard) {
+    games.put(gameId, gameBoard);
+  }
+
+  @Override
+  public GameBoard load(String gameId) {
+    BoardSnapshot gameBoard = games.get(gameId);
+    return gameBoard == null ? null : gameBoard.toGameBoard();
+  }
+
+  @Override
+  public void delete(String gameId) {
+    games.remove(gameId);
+  }
+
+  @Override
+  public List<String> list() {
+    return new ArrayList<>(games.keySet());
+  }
+
+  @Override
+  public void close() {
+    games.clear();
+  }
+}
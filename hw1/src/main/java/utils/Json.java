@@ -0,0 +1,72 @@
+package utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import models.Message;
+
+public final class Json {
+
+  /**
+   * Shared serializer for messages. Gson is thread-safe, so one instance is built once
+   * with a hand-written adapter instead of discovering fields by reflection on every call.
+   * The adapter writes the same JSON as Gson's reflective serialization of a Message.
+   * Game boards are written by BoardJsonWriter.
+   */
+  public static final Gson GSON = new GsonBuilder()
+      .registerTypeHierarchyAdapter(Message.class, new MessageAdapter())
+      .create();
+
+  private Json() {
+  }
+
+  /**
+   * Writes a Message, including the shared Message constants, as
+   * {"moveValidity":true,"code":100,"message":""}.
+   */
+  static final class MessageAdapter extends TypeAdapter<Message> {
+
+    @Override
+    public void write(JsonWriter out, Message message) throws IOException {
+      if (message == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      out.name("moveValidity").value(message.isMoveValidity());
+      out.name("code").value(message.getCode());
+      out.name("message").value(message.getMessage());
+      out.endObject();
+    }
+
+    @Override
+    public Message read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      boolean moveValidity = false;
+      int code = 0;
+      String message = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        String name = in.nextName();
+        if ("moveValidity".equals(name)) {
+          moveValidity = in.nextBoolean();
+        } else if ("code".equals(name)) {
+          code = in.nextInt();
+        } else if ("message".equals(name) && in.peek() != JsonToken.NULL) {
+          message = in.nextString();
+        } else {
+          in.skipValue();
+        }
+      }
+      in.endObject();
+      return new Message(moveValidity, code, message);
+    }
+  }
+}
@@ -0,0 +1,513 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+import models.BoardSnapshot;
+import models.GameBoard;
+import models.Player;
+
+public class MappedGameRepository implements GameRepository {
+
+  public static final String FILE_PROPERTY = "tictactoe.persistence.mappedFile";
+  public static final String MAX_SIZE_PROPERTY = "tictactoe.persistence.mappedMaxSize";
+  public static final String FORCE_MILLIS_PROPERTY = "tictactoe.persistence.forceMillis";
+  private static final String DEFAULT_FILE = "tictactoe.games";
+  private static final int DEFAULT_FORCE_MILLIS = 1000;
+  private static final AsyncLog LOG = AsyncLog.getLog(MappedGameRepository.class);
+  private static final int MAGIC = 0x54545447;
+  private static final int FORMAT_VERSION = 1;
+  private static final int INITIAL_CAPACITY = 256;
+  // Header: magic, format version, record size, number of slots and the largest board size
+  private static final int HEADER_SIZE = 64;
+  private static final int CAPACITY = 12;
+  private static final int MAX_SIZE = 16;
+  // Record: checksum of the rest of the record, state, ID length, board size, win length,
+  // players, turn, flags, ID, then the marks of X and of O, each in as many longs as the
+  // largest board needs. A 3x3 record takes 64 bytes.
+  private static final int MAX_ID_BYTES = 32;
+  private static final int CHECKSUM = 0;
+  private static final int STATE = 4;
+  private static final int ID_LENGTH = 5;
+  private static final int SIZE = 6;
+  private static final int WIN_LENGTH = 7;
+  private static final int P1_TYPE = 8;
+  private static final int P2_TYPE = 10;
+  private static final int P1_ID = 12;
+  private static final int P2_ID = 13;
+  private static final int TURN = 14;
+  private static final int FLAGS = 15;
+  private static final int ID = 16;
+  private static final int MARKS = ID + MAX_ID_BYTES;
+  private static final byte FREE = 0;
+  private static final byte USED = 1;
+  private static final int WINNER_MASK = 3;
+  private static final int DRAW_FLAG = 4;
+  private static final int STARTED_FLAG = 8;
+  private static final int COMPUTER_FLAG = 16;
+
+  private final Path path;
+  private final FileChannel channel;
+  private final HashMap<String, Integer> slots;
+  private final ArrayDeque<Integer> freeSlots;
+  private final ScheduledExecutorService forcer;
+  private final LongAdder forces;
+  private final MetricsRegistry.Timer forceTimer;
+  private final AsyncLog.Sampler failures;
+  private volatile MappedByteBuffer buffer;
+  private int capacity;
+  private int maxSize;
+  private int markLongs;
+  private int recordSize;
+  private int tornRecords;
+  private int dirtyFrom;
+  private int dirtyTo;
+
+  /**
+   * Stores every game as a fixed-size record in a memory-mapped file, with records sized
+   * for the largest board the file accepts. A game keeps its slot until it is deleted, and
+   * a save overwrites the record in place, so a write is a few stores into memory without
+   * a system call. Writes survive a crash of the process as soon as they are made. A
+   * background thread forces the changed part of the file to disk every forceMillis, so a
+   * crash of the operating system loses at most that much.
+   * Opening the file scans every slot once to rebuild the index of games. Each record
+   * carries a checksum, and a record torn by a crash in the middle of a write is dropped
+   * instead of being restored with a mix of two boards.
+   * @param path the file, created if it does not exist
+   * @param maxSize largest board size a new file accepts. An existing file keeps its own.
+   * @param forceMillis time between forces, or 0 to force only on close
+   * @throws SQLException if the file cannot be opened or is not a game store
+   */
+  public MappedGameRepository(Path path, int maxSize, long forceMillis) throws SQLException {
+    this.path = path;
+    this.slots = new HashMap<>();
+    this.freeSlots = new ArrayDeque<>();
+    this.forces = new LongAdder();
+    this.forceTimer = new MetricsRegistry.Timer();
+    this.failures = new AsyncLog.Sampler(LOG, 10, TimeUnit.SECONDS);
+    try {
+      this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+          StandardOpenOption.READ, StandardOpenOption.WRITE);
+      if (channel.size() == 0) {
+        this.layout(maxSize);
+        this.map(INITIAL_CAPACITY);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putInt(8, recordSize);
+        buffer.putInt(CAPACITY, INITIAL_CAPACITY);
+        buffer.putInt(MAX_SIZE, maxSize);
+        this.markDirty(0, HEADER_SIZE);
+      } else {
+        this.open();
+      }
+    } catch (IOException e) {
+      throw new SQLException("Could not open the game store " + path, e);
+    }
+    this.recover();
+
+    if (forceMillis > 0) {
+      this.forcer = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "mapped-force");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.forcer.scheduleWithFixedDelay(this::run, forceMillis, forceMillis,
+          TimeUnit.MILLISECONDS);
+    } else {
+      this.forcer = null;
+    }
+  }
+
+  /**
+   * Opens a store for boards of any size that forces every second.
+   * @param path the file, created if it does not exist
+   * @throws SQLException if the file cannot be opened or is not a game store
+   */
+  public MappedGameRepository(Path path) throws SQLException {
+    this(path, GameBoard.MAX_SIZE, DEFAULT_FORCE_MILLIS);
+  }
+
+  /**
+   * Opens the file set by the tictactoe.persistence.mappedFile system property, or
+   * tictactoe.games in the working directory. A new file accepts boards up to
+   * tictactoe.persistence.mappedMaxSize (default 32), and the file is forced every
+   * tictactoe.persistence.forceMillis milliseconds (default 1000).
+   * @return new repository
+   * @throws SQLException if the file cannot be opened or is not a game store
+   */
+  public static MappedGameRepository fromSystemProperties() throws SQLException {
+    return new MappedGameRepository(Paths.get(System.getProperty(FILE_PROPERTY, DEFAULT_FILE)),
+        Integer.getInteger(MAX_SIZE_PROPERTY, GameBoard.MAX_SIZE),
+        Integer.getInteger(FORCE_MILLIS_PROPERTY, DEFAULT_FORCE_MILLIS));
+  }
+
+  // Sizes the records for boards up to maxSize
+  private void layout(int maxSize) throws SQLException {
+    if (maxSize < GameBoard.MIN_SIZE || maxSize > GameBoard.MAX_SIZE) {
+      throw new SQLException("Game store " + path + " cannot hold boards of size " + maxSize);
+    }
+    this.maxSize = maxSize;
+    this.markLongs = (maxSize * maxSize + 63) >>> 6;
+    // Records are a whole number of cache lines
+    this.recordSize = (MARKS + markLongs * 16 + 63) & ~63;
+  }
+
+  /**
+   * Maps an existing file after checking its header.
+   * @throws IOException if the file cannot be mapped
+   * @throws SQLException if the file is not a game store of this format
+   */
+  private void open() throws IOException, SQLException {
+    if (channel.size() < HEADER_SIZE) {
+      throw new SQLException(path + " is not a game store");
+    }
+    MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+    if (header.getInt(0) != MAGIC) {
+      throw new SQLException(path + " is not a game store");
+    }
+    if (header.getInt(4) != FORMAT_VERSION) {
+      throw new SQLException("Game store " + path + " has format version "
+          + header.getInt(4) + ", but only version " + FORMAT_VERSION + " is supported");
+    }
+    this.layout(header.getInt(MAX_SIZE));
+    if (header.getInt(8) != recordSize) {
+      throw new SQLException("Game store " + path + " has records of " + header.getInt(8)
+          + " bytes instead of " + recordSize);
+    }
+    this.map(header.getInt(CAPACITY));
+  }
+
+  // Maps the header and the given number of slots, growing the file if it is shorter
+  private void map(int slotCount) throws IOException {
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+        HEADER_SIZE + (long) slotCount * recordSize);
+    capacity = slotCount;
+  }
+
+  /**
+   * Scans every slot, indexing the games whose records are intact and freeing the slots of
+   * torn records.
+   */
+  private void recover() {
+    for (int slot = 0; slot < capacity; slot++) {
+      int offset = this.offset(slot);
+      if (buffer.get(offset + STATE) != USED) {
+        freeSlots.add(slot);
+      } else if (buffer.getInt(offset + CHECKSUM) != this.checksum(offset)) {
+        tornRecords++;
+        buffer.put(offset + STATE, FREE);
+        this.markDirty(offset, offset + recordSize);
+        freeSlots.add(slot);
+      } else {
+        slots.put(this.readId(offset), slot);
+      }
+    }
+    if (tornRecords > 0) {
+      LOG.warn("Dropped {} torn records of game store {}", tornRecords, path);
+    }
+    LOG.info("Opened game store {} with {} games", path, slots.size());
+  }
+
+  // Returns the position of a slot's record in the file
+  private int offset(int slot) {
+    return HEADER_SIZE + slot * recordSize;
+  }
+
+  // Returns the checksum of a record, covering everything after the checksum itself
+  private int checksum(int offset) {
+    CRC32C crc = new CRC32C();
+    crc.update(buffer.slice(offset + STATE, recordSize - STATE));
+    return (int) crc.getValue();
+  }
+
+  @Override
+  public synchronized void save(String gameId, BoardSnapshot gameBoard) throws SQLException {
+    if (gameBoard.getSize() > maxSize) {
+      throw new SQLException("Game store " + path + " only holds boards up to size "
+          + maxSize);
+    }
+    Integer slot = slots.get(gameId);
+    if (slot == null) {
+      slot = this.allocate(gameId);
+    }
+    this.write(this.offset(slot), gameBoard);
+  }
+
+  // An ID must fit the ID field of a record
+  @Override
+  public boolean acceptsGameId(String gameId) {
+    return gameId.getBytes(StandardCharsets.UTF_8).length <= MAX_ID_BYTES;
+  }
+
+  /**
+   * Takes a free slot for a new game and writes its ID. The slot is marked as used only
+   * when the board is written.
+   * @param gameId ID of the game
+   * @return the slot
+   * @throws SQLException if the ID is too long or the file cannot grow
+   */
+  private int allocate(String gameId) throws SQLException {
+    byte[] id = gameId.getBytes(StandardCharsets.UTF_8);
+    if (id.length > MAX_ID_BYTES) {
+      throw new SQLException("Game ID " + gameId + " is longer than " + MAX_ID_BYTES
+          + " bytes");
+    }
+    if (freeSlots.isEmpty()) {
+      this.grow();
+    }
+
+    int slot = freeSlots.poll();
+    int offset = this.offset(slot);
+    buffer.put(offset + ID_LENGTH, (byte) id.length);
+    buffer.put(offset + ID, id);
+    slots.put(gameId, slot);
+    return slot;
+  }
+
+  // Doubles the number of slots
+  private void grow() throws SQLException {
+    int grown = capacity * 2;
+    try {
+      this.map(grown);
+    } catch (IOException e) {
+      throw new SQLException("Could not grow the game store " + path, e);
+    }
+    buffer.putInt(CAPACITY, grown);
+    this.markDirty(0, HEADER_SIZE);
+    for (int slot = grown / 2; slot < grown; slot++) {
+      freeSlots.add(slot);
+    }
+    LOG.debug("Grew game store {} to {} slots", path, grown);
+  }
+
+  /**
+   * Writes a board into a record, marks the record as used and seals it with its checksum.
+   * @param offset position of the record
+   * @param gameBoard the board
+   */
+  private void write(int offset, BoardSnapshot gameBoard) {
+    int size = gameBoard.getSize();
+    buffer.put(offset + SIZE, (byte) size);
+    buffer.put(offset + WIN_LENGTH, (byte) gameBoard.getWinLength());
+    writePlayer(offset + P1_TYPE, offset + P1_ID, gameBoard.getP1());
+    writePlayer(offset + P2_TYPE, offset + P2_ID, gameBoard.getP2());
+    buffer.put(offset + TURN, (byte) gameBoard.getTurn());
+    buffer.put(offset + FLAGS, (byte) ((gameBoard.getWinner() & WINNER_MASK)
+        | (gameBoard.isDraw() ? DRAW_FLAG : 0)
+        | (gameBoard.isGameStarted() ? STARTED_FLAG : 0)
+        | (gameBoard.isComputerP2() ? COMPUTER_FLAG : 0)));
+
+    // Cell (x, y) is bit x * size + y, as in BitBoard
+    int cells = size * size;
+    for (int word = 0; word < markLongs; word++) {
+      long xmarks = 0;
+      long omarks = 0;
+      for (int bit = word * 64; bit < Math.min(cells, word * 64 + 64); bit++) {
+        char mark = gameBoard.getMark(bit / size, bit % size);
+        if (mark == 'X') {
+          xmarks |= 1L << bit;
+        } else if (mark == 'O') {
+          omarks |= 1L << bit;
+        }
+      }
+      buffer.putLong(offset + MARKS + word * 8, xmarks);
+      buffer.putLong(offset + MARKS + (markLongs + word) * 8, omarks);
+    }
+    buffer.put(offset + STATE, USED);
+    buffer.putInt(offset + CHECKSUM, this.checksum(offset));
+    this.markDirty(offset, offset + recordSize);
+  }
+
+  private void writePlayer(int typePosition, int idPosition, Player player) {
+    buffer.putChar(typePosition, player == null ? '\u0000' : player.getType());
+    buffer.put(idPosition, (byte) (player == null ? 0 : player.getId()));
+  }
+
+  @Override
+  public synchronized GameBoard load(String gameId) {
+    Integer slot = slots.get(gameId);
+    return slot == null ? null : this.read(this.offset(slot));
+  }
+
+  /**
+   * Restores every game from the mapped records in one pass over the index, without a
+   * read per game.
+   */
+  @Override
+  public synchronized Map<String, GameBoard> loadAll() {
+    Map<String, GameBoard> games = new LinkedHashMap<>();
+    for (Map.Entry<String, Integer> entry : slots.entrySet()) {
+      games.put(entry.getKey(), this.read(this.offset(entry.getValue())));
+    }
+    return games;
+  }
+
+  // Reads the board of a record
+  private GameBoard read(int offset) {
+    int size = buffer.get(offset + SIZE);
+    char[][] boardState = new char[size][size];
+    for (int bit = 0; bit < size * size; bit++) {
+      long mask = 1L << bit;
+      if ((buffer.getLong(offset + MARKS + (bit >>> 6) * 8) & mask) != 0) {
+        boardState[bit / size][bit % size] = 'X';
+      } else if ((buffer.getLong(offset + MARKS + (markLongs + (bit >>> 6)) * 8) & mask)
+          != 0) {
+        boardState[bit / size][bit % size] = 'O';
+      }
+    }
+    int flags = buffer.get(offset + FLAGS);
+    return new GameBoard(this.readPlayer(offset + P1_TYPE, offset + P1_ID),
+        this.readPlayer(offset + P2_TYPE, offset + P2_ID), (flags & STARTED_FLAG) != 0,
+        buffer.get(offset + TURN), boardState, flags & WINNER_MASK, (flags & DRAW_FLAG) != 0,
+        buffer.get(offset + WIN_LENGTH), (flags & COMPUTER_FLAG) != 0);
+  }
+
+  private Player readPlayer(int typePosition, int idPosition) {
+    char type = buffer.getChar(typePosition);
+    return type == '\u0000' ? null : new Player(type, buffer.get(idPosition));
+  }
+
+  private String readId(int offset) {
+    byte[] id = new byte[buffer.get(offset + ID_LENGTH)];
+    buffer.get(offset + ID, id);
+    return new String(id, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public synchronized void delete(String gameId) {
+    Integer slot = slots.remove(gameId);
+    if (slot != null) {
+      int offset = this.offset(slot);
+      buffer.put(offset + STATE, FREE);
+      this.markDirty(offset, offset + recordSize);
+      freeSlots.push(slot);
+    }
+  }
+
+  @Override
+  public synchronized List<String> list() {
+    return new ArrayList<>(slots.keySet());
+  }
+
+  // Widens the range of the file that the next force writes
+  private void markDirty(int from, int to) {
+    if (dirtyFrom >= dirtyTo) {
+      dirtyFrom = from;
+      dirtyTo = to;
+    } else {
+      dirtyFrom = Math.min(dirtyFrom, from);
+      dirtyTo = Math.max(dirtyTo, to);
+    }
+  }
+
+  private void run() {
+    try {
+      this.force();
+    } catch (RuntimeException e) {
+      failures.warn("Could not force the game store to disk: {}", e.toString());
+    }
+  }
+
+  /**
+   * Writes the records changed since the last force to disk. Saves are not blocked while
+   * the operating system writes them.
+   */
+  public void force() {
+    MappedByteBuffer mapped;
+    int from;
+    int to;
+    synchronized (this) {
+      if (dirtyFrom >= dirtyTo) {
+        return;
+      }
+      mapped = buffer;
+      from = dirtyFrom;
+      to = dirtyTo;
+      dirtyFrom = 0;
+      dirtyTo = 0;
+    }
+    long start = System.nanoTime();
+    mapped.force(from, to - from);
+    forceTimer.recordSince(start);
+    forces.increment();
+  }
+
+  @Override
+  public void registerMetrics(MetricsRegistry metrics) {
+    metrics.gauge("tictactoe_store_games", "Games in the memory-mapped game store.",
+        this::size);
+    metrics.gauge("tictactoe_store_slots", "Slots of the memory-mapped game store.",
+        this::getCapacity);
+    metrics.gauge("tictactoe_store_torn_records",
+        "Torn records dropped when the game store was opened.", this::getTornRecords);
+    metrics.counter("tictactoe_store_forces_total",
+        "Forces of the game store to disk.", this::getForces);
+    metrics.timer("tictactoe_store_force_seconds",
+        "Time to force the changed records of the game store to disk.", forceTimer);
+  }
+
+  /**
+   * Stops the background forces, forces the last changes and closes the file.
+   * @throws SQLException if the file cannot be written
+   */
+  @Override
+  public void close() throws SQLException {
+    if (forcer != null) {
+      forcer.shutdown();
+      try {
+        forcer.awaitTermination(1, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    synchronized (this) {
+      try {
+        this.force();
+        channel.close();
+      } catch (IOException | RuntimeException e) {
+        throw new SQLException("Could not close the game store " + path, e);
+      }
+    }
+  }
+
+  //  Returns the number of stored games
+  public synchronized int size() {
+    return slots.size();
+  }
+
+  //  Returns the number of slots in the file
+  public synchronized int getCapacity() {
+    return capacity;
+  }
+
+  //  Returns the size of each record in bytes
+  public int getRecordSize() {
+    return recordSize;
+  }
+
+  //  Returns the number of torn records dropped when the file was opened
+  public synchronized int getTornRecords() {
+    return tornRecords;
+  }
+
+  //  Returns the number of times the file was forced to disk
+  public long getForces() {
+    return forces.sum();
+  }
+}
@@ -0,0 +1,283 @@
+package utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of the application's counters, gauges and timers. Meters are looked up by name
+ * and labels, created on first use, and written in the Prometheus text format by scrape.
+ * Labels are given as name, value pairs and should only take a few distinct values.
+ */
+public class MetricsRegistry {
+
+  private final ConcurrentSkipListMap<String, Family> families;
+
+  /**
+   * Creates a registry without meters.
+   */
+  public MetricsRegistry() {
+    this.families = new ConcurrentSkipListMap<>();
+  }
+
+  /**
+   * Returns the counter with the given name and labels, creating it if needed.
+   * @param name metric name, ending in _total
+   * @param help description of the metric
+   * @param labels label names and values, e.g. "code", "100"
+   * @return the counter
+   */
+  public Counter counter(String name, String help, String... labels) {
+    return (Counter) family(name, help, "counter").meters
+        .computeIfAbsent(labelsOf(labels), key -> new Counter());
+  }
+
+  /**
+   * Registers a counter whose value is read from an existing count, e.g. a LongAdder that
+   * a component already keeps.
+   * @param name metric name, ending in _total
+   * @param help description of the metric
+   * @param value reads the current count
+   * @param labels label names and values
+   */
+  public void counter(String name, String help, LongSupplier value, String... labels) {
+    family(name, help, "counter").meters.put(labelsOf(labels), new Reading(value));
+  }
+
+  /**
+   * Registers a gauge whose value is read when the metrics are scraped.
+   * @param name metric name
+   * @param help description of the metric
+   * @param value reads the current value
+   * @param labels label names and values
+   */
+  public void gauge(String name, String help, LongSupplier value, String... labels) {
+    family(name, help, "gauge").meters.put(labelsOf(labels), new Reading(value));
+  }
+
+  /**
+   * Returns the timer with the given name and labels, creating it if needed.
+   * @param name metric name, ending in _seconds
+   * @param help description of the metric
+   * @param labels label names and values
+   * @return the timer
+   */
+  public Timer timer(String name, String help, String... labels) {
+    return (Timer) family(name, help, "histogram").meters
+        .computeIfAbsent(labelsOf(labels), key -> new Timer());
+  }
+
+  /**
+   * Registers a timer that a component already keeps.
+   * @param name metric name, ending in _seconds
+   * @param help description of the metric
+   * @param timer the timer
+   * @param labels label names and values
+   */
+  public void timer(String name, String help, Timer timer, String... labels) {
+    family(name, help, "histogram").meters.put(labelsOf(labels), timer);
+  }
+
+  /**
+   * Writes every metric in the Prometheus text exposition format.
+   * @return the metrics
+   */
+  public String scrape() {
+    StringBuilder out = new StringBuilder(4096);
+    for (Map.Entry<String, Family> entry : families.entrySet()) {
+      String name = entry.getKey();
+      Family family = entry.getValue();
+      out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+      out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+      for (Map.Entry<String, Meter> meter : family.meters.entrySet()) {
+        meter.getValue().write(out, name, meter.getKey());
+      }
+    }
+    return out.toString();
+  }
+
+  private Family family(String name, String help, String type) {
+    Family family = families.computeIfAbsent(name, key -> new Family(help, type));
+    if (!family.type.equals(type)) {
+      throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+    }
+    return family;
+  }
+
+  // Formats the labels as they appear between the braces, e.g. code="100",route="/move"
+  private static String labelsOf(String... labels) {
+    if (labels.length % 2 != 0) {
+      throw new IllegalArgumentException("Labels must be name, value pairs");
+    }
+    StringBuilder out = new StringBuilder();
+    for (int i = 0; i < labels.length; i += 2) {
+      if (i > 0) {
+        out.append(',');
+      }
+      out.append(labels[i]).append("=\"");
+      String value = labels[i + 1];
+      for (int j = 0; j < value.length(); j++) {
+        char c = value.charAt(j);
+        if (c == '\\' || c == '"') {
+          out.append('\\').append(c);
+        } else if (c == '\n') {
+          out.append("\\n");
+        } else {
+          out.append(c);
+        }
+      }
+      out.append('"');
+    }
+    return out.toString();
+  }
+
+  // Writes one sample, e.g. name{labels} value
+  private static void sample(StringBuilder out, String name, String labels, String value) {
+    out.append(name);
+    if (!labels.isEmpty()) {
+      out.append('{').append(labels).append('}');
+    }
+    out.append(' ').append(value).append('\n');
+  }
+
+  /**
+   * Metrics of the same name, with their help text, type and meters by labels.
+   */
+  private static final class Family {
+    private final String help;
+    private final String type;
+    private final ConcurrentSkipListMap<String, Meter> meters;
+
+    private Family(String help, String type) {
+      this.help = help;
+      this.type = type;
+      this.meters = new ConcurrentSkipListMap<>();
+    }
+  }
+
+  /**
+   * A meter that writes its samples.
+   */
+  private interface Meter {
+    void write(StringBuilder out, String name, String labels);
+  }
+
+  /**
+   * A counter or gauge read from elsewhere when scraped.
+   */
+  private static final class Reading implements Meter {
+    private final LongSupplier value;
+
+    private Reading(LongSupplier value) {
+      this.value = value;
+    }
+
+    @Override
+    public void write(StringBuilder out, String name, String labels) {
+      sample(out, name, labels, Long.toString(value.getAsLong()));
+    }
+  }
+
+  /**
+   * A count that only goes up.
+   */
+  public static final class Counter implements Meter {
+    private final LongAdder count = new LongAdder();
+
+    //  Adds one to the count
+    public void increment() {
+      count.increment();
+    }
+
+    //  Returns the count
+    public long get() {
+      return count.sum();
+    }
+
+    @Override
+    public void write(StringBuilder out, String name, String labels) {
+      sample(out, name, labels, Long.toString(get()));
+    }
+  }
+
+  /**
+   * Durations in a histogram with fixed buckets from 50 microseconds to 10 seconds.
+   */
+  public static final class Timer implements Meter {
+    private static final long[] BOUNDS_NANOS = {
+        50_000L, 100_000L, 250_000L, 500_000L, 1_000_000L, 2_500_000L, 5_000_000L,
+        10_000_000L, 25_000_000L, 50_000_000L, 100_000_000L, 250_000_000L, 500_000_000L,
+        1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L};
+    private static final String[] BOUNDS = {
+        "5.0E-5", "1.0E-4", "2.5E-4", "5.0E-4", "0.001", "0.0025", "0.005", "0.01", "0.025",
+        "0.05", "0.1", "0.25", "0.5", "1.0", "2.5", "5.0", "10.0"};
+
+    private final LongAdder[] buckets;
+    private final LongAdder count;
+    private final LongAdder totalNanos;
+
+    /**
+     * Creates a timer. Timers that a component keeps are registered with
+     * MetricsRegistry.timer.
+     */
+    public Timer() {
+      this.buckets = new LongAdder[BOUNDS_NANOS.length];
+      for (int i = 0; i < buckets.length; i++) {
+        buckets[i] = new LongAdder();
+      }
+      this.count = new LongAdder();
+      this.totalNanos = new LongAdder();
+    }
+
+    /**
+     * Records a duration.
+     * @param nanos duration in nanoseconds
+     */
+    public void record(long nanos) {
+      for (int i = 0; i < BOUNDS_NANOS.length; i++) {
+        if (nanos <= BOUNDS_NANOS[i]) {
+          buckets[i].increment();
+          break;
+        }
+      }
+      count.increment();
+      totalNanos.add(nanos);
+    }
+
+    /**
+     * Records the time since the given start.
+     * @param startNanos start from System.nanoTime
+     */
+    public void recordSince(long startNanos) {
+      this.record(System.nanoTime() - startNanos);
+    }
+
+    //  Returns the number of recorded durations
+    public long getCount() {
+      return count.sum();
+    }
+
+    //  Returns the sum of the recorded durations in nanoseconds
+    public long getTotalNanos() {
+      return totalNanos.sum();
+    }
+
+    @Override
+    public void write(StringBuilder out, String name, String labels) {
+      String prefix = labels.isEmpty() ? "" : labels + ",";
+      long cumulative = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        cumulative += buckets[i].sum();
+        sample(out, name + "_bucket", prefix + "le=\"" + BOUNDS[i] + "\"",
+            Long.toString(cumulative));
+      }
+      // Durations recorded while scraping may be in a bucket but not yet in the count,
+      // and +Inf must not be below the other buckets
+      long total = Math.max(getCount(), cumulative);
+      sample(out, name + "_bucket", prefix + "le=\"+Inf\"", Long.toString(total));
+      sample(out, name + "_sum", labels, Double.toString(getTotalNanos() / 1e9));
+      sample(out, name + "_count", labels, Long.toString(total));
+    }
+  }
+}
@@ -1,32 +1,225 @@
 package utils;
 
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import models.GameBoard;
 import models.Player;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConfig.JournalMode;
+import org.sqlite.SQLiteConfig.Pragma;
+import org.sqlite.SQLiteConfig.SynchronousMode;
+import org.sqlite.SQLiteConfig.TempStore;
 
 public class SqliteDatabase {
   
+  private static final AsyncLog LOG = AsyncLog.getLog(SqliteDatabase.class);
   private Connection connection;
+  private PreparedStatement insertStatement;
+  private PreparedStatement deleteStatement;
+  private PreparedStatement appendMoveStatement;
+  private PreparedStatement snapshotStatement;
+  private PreparedStatement compactMovesStatement;
+  private PreparedStatement compactSnapshotsStatement;
+  private PreparedStatement deleteMovesStatement;
+  private PreparedStatement deleteSnapshotsStatement;
+  private BlockingQueue<Reader> readers;
+  private WalCheckpointer checkpointer;
   private int key;
+  private final int snapshotInterval;
+  private final StorageProfile profile;
+  private final String file;
+  public static final String EVENT_LOG_PROPERTY = "tictactoe.persistence.eventLog";
+  public static final String SNAPSHOT_INTERVAL_PROPERTY = 
+      "tictactoe.persistence.snapshotInterval";
+  private static final int DEFAULT_SNAPSHOT_INTERVAL = 4;
+  public static final String STORAGE_PROFILE_PROPERTY = "tictactoe.persistence.storageProfile";
+  public static final String CHECKPOINT_MILLIS_PROPERTY = 
+      "tictactoe.persistence.checkpointMillis";
+  private static final int DEFAULT_CHECKPOINT_MILLIS = 1000;
+  // Pages of the write-ahead log, about 4 MiB, before a checkpoint truncates it
+  private static final int MAX_WAL_FRAMES = 1000;
+  private static final int BUSY_TIMEOUT_MILLIS = 5000;
   private static final String DB_NAME = "tictactoe.db";
   private static final String TABLE_NAME = "GameBoard";
+  private static final String MOVE_TABLE_NAME = "GameMove";
+  private static final String SNAPSHOT_TABLE_NAME = "GameSnapshot";
+  private static final int READER_POOL_SIZE = 2;
+  private static final int SCHEMA_VERSION = 2;
+  // The BOARD column packs the X marks of a 3x3 board into bits 0-8 and the O marks into
+  // bits 9-17, followed by turn + 1, the winner, the draw and started flags, the size, and
+  // whether the computer plays as player 2
+  private static final int MARKS = 0x1ff;
+  private static final int O_SHIFT = 9;
+  private static final int TURN_SHIFT = 18;
+  private static final int WINNER_SHIFT = 20;
+  private static final int DRAW_BIT = 1 << 22;
+  private static final int STARTED_BIT = 1 << 23;
+  private static final int SIZE_SHIFT = 24;
+  private static final int SIZE_MASK = 0x3f;
+  private static final int COMPUTER_BIT = 1 << 30;
+  private static final String INSERT_SQL = "INSERT INTO " + TABLE_NAME 
+      + " (ID, P1_ID, P1_TYPE, P2_ID, P2_TYPE, BOARD, MARKS, WIN_LENGTH)"
+      + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+  private static final String SELECT_SQL = 
+      "SELECT * FROM " + TABLE_NAME + " ORDER BY ID DESC LIMIT 1";
+  private static final String DELETE_SQL = "DELETE FROM " + TABLE_NAME;
+  private static final String APPEND_MOVE_SQL = "INSERT OR REPLACE INTO " + MOVE_TABLE_NAME
+      + " (GAME_ID, SEQ, PLAYER_ID, X, Y) VALUES (?, ?, ?, ?, ?)";
+  private static final String SNAPSHOT_SQL = "INSERT OR REPLACE INTO " + SNAPSHOT_TABLE_NAME
+      + " (GAME_ID, SEQ, P1_ID, P1_TYPE, P2_ID, P2_TYPE, BOARD, MARKS, WIN_LENGTH)"
+      + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+  private static final String COMPACT_MOVES_SQL = 
+      "DELETE FROM " + MOVE_TABLE_NAME + " WHERE GAME_ID = ? AND SEQ <= ?";
+  private static final String COMPACT_SNAPSHOTS_SQL = 
+      "DELETE FROM " + SNAPSHOT_TABLE_NAME + " WHERE GAME_ID = ? AND SEQ < ?";
+  private static final String DELETE_MOVES_SQL = 
+      "DELETE FROM " + MOVE_TABLE_NAME + " WHERE GAME_ID = ?";
+  private static final String DELETE_SNAPSHOTS_SQL = 
+      "DELETE FROM " + SNAPSHOT_TABLE_NAME + " WHERE GAME_ID = ?";
+  private static final String SELECT_SNAPSHOT_SQL = "SELECT * FROM " + SNAPSHOT_TABLE_NAME 
+      + " WHERE GAME_ID = ? ORDER BY SEQ DESC LIMIT 1";
+  private static final String SELECT_MOVES_SQL = "SELECT PLAYER_ID, X, Y FROM " 
+      + MOVE_TABLE_NAME + " WHERE GAME_ID = ? AND SEQ > ? ORDER BY SEQ";
+  private static final String SELECT_GAME_IDS_SQL = 
+      "SELECT DISTINCT GAME_ID FROM " + SNAPSHOT_TABLE_NAME;
 
+  /**
+   * How the database trades durability for speed. Every profile uses the write-ahead log,
+   * so readers do not block the writer and a commit appends to the log instead of writing
+   * a rollback journal. A background checkpointer copies the log back into the database
+   * and keeps the log file small.
+   * DURABLE syncs every commit to disk and also checkpoints when a commit fills the log.
+   * BALANCED only syncs at checkpoints: a power loss may undo the last commits, but cannot
+   * corrupt the database. Reads use 64 MiB of memory-mapped I/O.
+   * FAST never syncs: an operating system crash or power loss may corrupt the database.
+   * Reads use 256 MiB of memory-mapped I/O and temporary data stays in memory.
+   */
+  public enum StorageProfile {
+    DURABLE(SynchronousMode.FULL, 0, 2_000, true),
+    BALANCED(SynchronousMode.NORMAL, 64L << 20, 8_000, false),
+    FAST(SynchronousMode.OFF, 256L << 20, 32_000, false);
+    
+    private final SynchronousMode synchronous;
+    private final long mmapSize;
+    private final int cacheKib;
+    private final boolean checkpointOnCommit;
+    
+    StorageProfile(SynchronousMode synchronous, long mmapSize, int cacheKib, 
+        boolean checkpointOnCommit) {
+      this.synchronous = synchronous;
+      this.mmapSize = mmapSize;
+      this.cacheKib = cacheKib;
+      this.checkpointOnCommit = checkpointOnCommit;
+    }
+    
+    // Returns the settings every connection applies when it opens
+    private SQLiteConfig config() {
+      SQLiteConfig config = new SQLiteConfig();
+      config.setJournalMode(JournalMode.WAL);
+      config.setSynchronous(synchronous);
+      config.setPragma(Pragma.MMAP_SIZE, Long.toString(mmapSize));
+      // A negative cache size is in KiB instead of pages
+      config.setCacheSize(-cacheKib);
+      config.setPragma(Pragma.JOURNAL_SIZE_LIMIT, Long.toString(MAX_WAL_FRAMES * 4096L));
+      config.setBusyTimeout(BUSY_TIMEOUT_MILLIS);
+      if (this == FAST) {
+        config.setTempStore(TempStore.MEMORY);
+      }
+      return config;
+    }
+  }
+  
   /**
    * Constructor for the sqlite database.
    * Creates a connection and a table if it doesn't exist in the database.
+   * All writes go through one connection, while reads borrow a connection from a small pool.
+   * Every connection prepares its statements once and reuses them until it is closed.
+   * Games can also be stored as a log of their moves, snapshotted every 
+   * tictactoe.persistence.snapshotInterval moves (default 4).
+   * The storage profile is set by tictactoe.persistence.storageProfile (default DURABLE).
    * @throws SQLException if problem with connection or statement 
    */
   public SqliteDatabase() throws SQLException {
+    this(Integer.getInteger(SNAPSHOT_INTERVAL_PROPERTY, DEFAULT_SNAPSHOT_INTERVAL));
+  }
+  
+  /**
+   * Constructor for the sqlite database with the given snapshot interval of the move log.
+   * @param snapshotInterval number of moves between snapshots of a game in the move log
+   * @throws SQLException if problem with connection or statement 
+   */
+  public SqliteDatabase(int snapshotInterval) throws SQLException {
+    this(snapshotInterval, StorageProfile.valueOf(
+        System.getProperty(STORAGE_PROFILE_PROPERTY, StorageProfile.DURABLE.name())));
+  }
+  
+  /**
+   * Constructor for the sqlite database with the given snapshot interval and storage 
+   * profile. The write-ahead log is checkpointed every 
+   * tictactoe.persistence.checkpointMillis milliseconds (default 1000).
+   * @param snapshotInterval number of moves between snapshots of a game in the move log
+   * @param profile how the database trades durability for speed
+   * @throws SQLException if problem with connection or statement 
+   */
+  public SqliteDatabase(int snapshotInterval, StorageProfile profile) throws SQLException {
+    this(DB_NAME, snapshotInterval, profile);
+  }
+  
+  /**
+   * Constructor for the sqlite database stored in the given file instead of tictactoe.db,
+   * e.g. a temporary file for benchmarks.
+   * @param file path of the database file, created if it does not exist
+   * @param snapshotInterval number of moves between snapshots of a game in the move log
+   * @param profile how the database trades durability for speed
+   * @throws SQLException if problem with connection or statement 
+   */
+  public SqliteDatabase(String file, int snapshotInterval, StorageProfile profile) 
+      throws SQLException {
     connection = null;
-    key = 1;
+    this.file = file;
+    this.snapshotInterval = Math.max(1, snapshotInterval);
+    this.profile = profile;
+    readers = new ArrayBlockingQueue<>(READER_POOL_SIZE);
     
     this.createConnection();
+    if (connection == null) {
+      throw new SQLException("Could not open the database " + file);
+    }
+    this.migrate();
     this.createTable();
+    this.prepareStatements();
+    key = this.nextKey();
+    checkpointer = new WalCheckpointer(this.openConnection(), 
+        Integer.getInteger(CHECKPOINT_MILLIS_PROPERTY, DEFAULT_CHECKPOINT_MILLIS), 
+        TimeUnit.MILLISECONDS, MAX_WAL_FRAMES);
+  }
+  
+  /**
+   * Opens a connection with the settings of the storage profile. Unless the profile
+   * checkpoints on commit, only the background checkpointer copies the log back.
+   * @return new connection in auto-commit mode
+   * @throws SQLException if the database cannot be opened
+   */
+  private Connection openConnection() throws SQLException {
+    Connection opened = DriverManager.getConnection("jdbc:sqlite:" + file, 
+        profile.config().toProperties());
+    if (!profile.checkpointOnCommit) {
+      try (Statement statement = opened.createStatement()) {
+        statement.execute("PRAGMA wal_autocheckpoint = 0");
+      }
+    }
+    return opened;
   }
   
   /**
@@ -35,13 +228,58 @@ public class SqliteDatabase {
   private void createConnection() {
     try {
       Class.forName("org.sqlite.JDBC");
-      connection = DriverManager.getConnection("jdbc:sqlite:" + DB_NAME);      
+      if (connection != null) {
+        connection.close();
+      }
+      connection = this.openConnection();
+      connection.setAutoCommit(false);
+      if (insertStatement != null) {
+        this.prepareStatements();
+      }
     } catch (Exception e) {
-      System.err.println(e.getClass().getName() + ": " + e.getMessage());
+      LOG.error("Could not open the database {}", file, e);
       return;
     }
     
-    System.out.println("Opened database successfully");
+    LOG.info("Opened database {}", file);
+  }
+  
+  /**
+   * Prepares the write statements on the write connection and opens the read connections.
+   * @throws SQLException if problem with connection or statement
+   */
+  private void prepareStatements() throws SQLException {
+    insertStatement = connection.prepareStatement(INSERT_SQL);
+    deleteStatement = connection.prepareStatement(DELETE_SQL);
+    appendMoveStatement = connection.prepareStatement(APPEND_MOVE_SQL);
+    snapshotStatement = connection.prepareStatement(SNAPSHOT_SQL);
+    compactMovesStatement = connection.prepareStatement(COMPACT_MOVES_SQL);
+    compactSnapshotsStatement = connection.prepareStatement(COMPACT_SNAPSHOTS_SQL);
+    deleteMovesStatement = connection.prepareStatement(DELETE_MOVES_SQL);
+    deleteSnapshotsStatement = connection.prepareStatement(DELETE_SNAPSHOTS_SQL);
+    
+    while (readers.size() < READER_POOL_SIZE) {
+      readers.add(new Reader(this.openConnection()));
+    }
+  }
+  
+  /**
+   * Returns the key after the largest one in the table, so a restarted application keeps 
+   * appending to the table instead of reusing keys.
+   * @return next free key
+   * @throws SQLException if problem with connection or statement
+   */
+  private int nextKey() throws SQLException {
+    Statement statement = connection.createStatement();
+    
+    try {
+      ResultSet result = statement.executeQuery("SELECT MAX(ID) FROM " + TABLE_NAME);
+      int maxKey = result.next() ? result.getInt(1) : 0;
+      connection.commit();
+      return maxKey + 1;
+    } finally {
+      statement.close();
+    }
   }
   
   /**
@@ -52,23 +290,135 @@ public class SqliteDatabase {
     Statement statement = connection.createStatement();
     
     try {
-      String sql = "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " "
-                  + "(ID INT PRIMARY KEY          NOT NULL," 
-                  + " P1_ID         INT                   , "
-                  + " P1_TYPE       CHAR(1)               , "
-                  + " P2_ID         INT                   , "
-                  + " P2_TYPE       CHAR(1)               , "
-                  + " GAMESTARTED   BOOLEAN       NOT NULL, "
-                  + " TURN          INT           NOT NULL, "
-                  + " BOARDSTATE    CHAR(9)       NOT NULL, "
-                  + " WINNER        INT           NOT NULL, "
-                  + " ISDRAW        BOOLEAN       NOT NULL)";
-      statement.executeUpdate(sql);
+      statement.executeUpdate(gameBoardTableSql(TABLE_NAME));
+      
+      // Move log: one small row per move, and a snapshot of each game every few moves
+      statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + MOVE_TABLE_NAME + " "
+                  + "(GAME_ID       TEXT          NOT NULL, "
+                  + " SEQ           INT           NOT NULL, "
+                  + " PLAYER_ID     INT           NOT NULL, "
+                  + " X             INT           NOT NULL, "
+                  + " Y             INT           NOT NULL, "
+                  + " PRIMARY KEY (GAME_ID, SEQ))");
+      statement.executeUpdate(snapshotTableSql(SNAPSHOT_TABLE_NAME));
+      connection.commit();
     } finally { 
       statement.close();
     }
     
-    System.out.println("Table created successfully");     
+    LOG.debug("Tables created");
+  }
+  
+  // Returns the statement that creates the single-game table under the given name
+  private static String gameBoardTableSql(String name) {
+    return "CREATE TABLE IF NOT EXISTS " + name + " "
+        + "(ID            INTEGER PRIMARY KEY NOT NULL, " 
+        + " P1_ID         INTEGER                     , "
+        + " P1_TYPE       TEXT                        , "
+        + " P2_ID         INTEGER                     , "
+        + " P2_TYPE       TEXT                        , "
+        + " BOARD         INTEGER             NOT NULL, "
+        + " MARKS         BLOB                        , "
+        + " WIN_LENGTH    INTEGER                     )";
+  }
+  
+  // Returns the statement that creates the snapshot table of the move log under the given 
+  // name. Snapshots store their board like the single-game table.
+  private static String snapshotTableSql(String name) {
+    return "CREATE TABLE IF NOT EXISTS " + name + " "
+        + "(GAME_ID       TEXT                NOT NULL, "
+        + " SEQ           INTEGER             NOT NULL, "
+        + " P1_ID         INTEGER                     , "
+        + " P1_TYPE       TEXT                        , "
+        + " P2_ID         INTEGER                     , "
+        + " P2_TYPE       TEXT                        , "
+        + " BOARD         INTEGER             NOT NULL, "
+        + " MARKS         BLOB                        , "
+        + " WIN_LENGTH    INTEGER                     , "
+        + " PRIMARY KEY (GAME_ID, SEQ))";
+  }
+  
+  /**
+   * Brings the single-game table of an older database up to the current schema, whose 
+   * version is kept in PRAGMA user_version. Version 0 stores every field of the board as 
+   * text. Version 2 stores the board as one packed INTEGER next to typed player columns, 
+   * with the marks of boards larger than 3x3 in a BLOB. Existing rows are converted in the 
+   * same transaction.
+   * @throws SQLException if problem with connection or statement, or the database was 
+   *     written by a newer version of the application
+   */
+  private void migrate() throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      int version;
+      try (ResultSet result = statement.executeQuery("PRAGMA user_version")) {
+        version = result.next() ? result.getInt(1) : 0;
+      }
+      if (version > SCHEMA_VERSION) {
+        throw new SQLException("Database schema version " + version 
+            + " is newer than the supported version " + SCHEMA_VERSION);
+      }
+      
+      if (version == 0 && hasTable(TABLE_NAME)) {
+        this.migrateTextTable(statement);
+      }
+      statement.executeUpdate("PRAGMA user_version = " + SCHEMA_VERSION);
+      connection.commit();
+    } catch (SQLException e) {
+      connection.rollback();
+      throw e;
+    }
+  }
+  
+  /**
+   * Copies the rows of the single-game table of schema version 0, which has text columns 
+   * for every field, to a new table of the current schema, and replaces the table with the 
+   * copy.
+   * @param statement statement to run the changes with
+   * @throws SQLException if problem with connection or statement
+   */
+  private void migrateTextTable(Statement statement) throws SQLException {
+    String newTable = TABLE_NAME + "_v2";
+    statement.executeUpdate(gameBoardTableSql(newTable));
+    
+    int rows = 0;
+    try (Statement select = connection.createStatement();
+        ResultSet result = select.executeQuery("SELECT * FROM " + TABLE_NAME);
+        PreparedStatement insert = connection.prepareStatement(
+            INSERT_SQL.replace("INTO " + TABLE_NAME + " ", "INTO " + newTable + " "))) {
+      while (result.next()) {
+        // Missing players were stored as the text NULL
+        GameBoard gameBoard = new GameBoard(readTextPlayer(result, "P1_ID", "P1_TYPE"), 
+            readTextPlayer(result, "P2_ID", "P2_TYPE"), result.getBoolean("GAMESTARTED"), 
+            result.getInt("TURN"), decodeBoardState(result.getString("BOARDSTATE")), 
+            result.getInt("WINNER"), result.getBoolean("ISDRAW"));
+        insert.setInt(1, result.getInt("ID"));
+        bindGameBoard(insert, 2, gameBoard);
+        insert.executeUpdate();
+        rows++;
+      }
+    }
+    
+    statement.executeUpdate("DROP TABLE " + TABLE_NAME);
+    statement.executeUpdate("ALTER TABLE " + newTable + " RENAME TO " + TABLE_NAME);
+    LOG.info("Migrated {} rows of table {} to schema version {}", rows, TABLE_NAME, 
+        SCHEMA_VERSION);
+  }
+  
+  // Reads a player from text columns, or null if the type is missing or the text NULL
+  private static Player readTextPlayer(ResultSet result, String idColumn, String typeColumn) 
+      throws SQLException {
+    String type = result.getString(typeColumn);
+    if (type == null || type.isEmpty() || "NULL".equals(type)) {
+      return null;
+    }
+    return new Player(type.charAt(0), result.getInt(idColumn));
+  }
+  
+  // Returns true if the database has a table with the given name
+  private boolean hasTable(String table) throws SQLException {
+    try (ResultSet tables = connection.getMetaData().getTables(null, null, table, null)) {
+      return tables.next();
+    }
   }
   
   /**
@@ -78,117 +428,359 @@ public class SqliteDatabase {
    * @throws SQLException if problem with connection or statement
    */
   public void addGameBoardData(GameBoard gameBoard) throws SQLException {
-    String sql = "INSERT INTO " + TABLE_NAME 
-        + " (ID, P1_ID, P1_TYPE, P2_ID, P2_TYPE, GAMESTARTED, TURN, BOARDSTATE, WINNER, ISDRAW)"
-        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-    PreparedStatement pstmt = connection.prepareStatement(sql);
+    try {
+      this.insertGameBoardData(gameBoard);
+      connection.commit();
+    } catch (SQLException e) {
+      connection.rollback();
+      throw e;
+    }
+  }
+  
+  /**
+   * Inserts the given GameBoard in the current transaction without committing it, 
+   * so that several writes can be committed together.
+   * @param gameBoard to be stored in the database
+   * @throws SQLException if problem with connection or statement
+   */
+  public void insertGameBoardData(GameBoard gameBoard) throws SQLException {
+    PreparedStatement pstmt = insertStatement;
     
     try {
-      connection.setAutoCommit(false);
-      System.out.println("Inserting game board data.");
+      LOG.debug("Inserting game board data with key {}", key);
       pstmt.setInt(1, key);
-      
-      String p1Id;
-      String p1Type;
-      if (gameBoard.getP1() == null) {
-        p1Id = "NULL";
-        p1Type = "NULL";
-      } else {
-        p1Id = Integer.toString(gameBoard.getP1().getId());
-        p1Type = String.valueOf(gameBoard.getP1().getType());
-      }
-      pstmt.setString(2, p1Id);
-      pstmt.setString(3, p1Type);
-      
-      String p2Id;
-      String p2Type;
-      if (gameBoard.getP2() == null) {
-        p2Id = "NULL";
-        p2Type = "NULL";
-      } else {
-        p2Id = Integer.toString(gameBoard.getP2().getId());
-        p2Type = String.valueOf(gameBoard.getP2().getType());
-      }
-      pstmt.setString(4, p2Id);
-      pstmt.setString(5, p2Type);
-      
-      String gameStarted = gameBoard.isGameStarted() ? "1" : "0";
-      pstmt.setString(6, gameStarted);
-      
-      String turn = Integer.toString(gameBoard.getTurn());
-      pstmt.setString(7, turn);
-      
-      // Creating a string representation of the board state
-      StringBuffer buf = new StringBuffer();
-      for (int i = 0; i < gameBoard.getBoardState().length; ++i) {
-        for (int j = 0; j < gameBoard.getBoardState()[i].length; j++) {
-          char type = gameBoard.getBoardState()[i][j] == '\u0000' ? 'N' 
-              : gameBoard.getBoardState()[i][j];
-          buf.append(type);
-        }
-      }
-      String boardState = buf.toString();
-      pstmt.setString(8, boardState);
-      
-      String winner = Integer.toString(gameBoard.getWinner());
-      pstmt.setString(9, winner);
-      
-      String isDraw = gameBoard.isDraw() ? "1" : "0";
-      pstmt.setString(10, isDraw);
-      
+      bindGameBoard(pstmt, 2, gameBoard);
       pstmt.executeUpdate();
-      connection.commit();
       
       key++;
     } finally {
-      pstmt.close();
+      pstmt.clearParameters();
     }
     
   }
   
+  /**
+   * Binds the players and the board of a row with native types, starting at the given 
+   * parameter: the players, the packed BOARD, the MARKS and the win length. A 3x3 board is
+   * packed into the BOARD column alone, larger boards store their marks in MARKS.
+   * @param pstmt the insert statement
+   * @param index parameter of the ID of player 1
+   * @param gameBoard the board to store
+   * @throws SQLException if problem with connection or statement
+   */
+  private static void bindGameBoard(PreparedStatement pstmt, int index, GameBoard gameBoard) 
+      throws SQLException {
+    bindPlayer(pstmt, index, gameBoard.getP1());
+    bindPlayer(pstmt, index + 2, gameBoard.getP2());
+    pstmt.setInt(index + 4, packBoard(gameBoard));
+    if (gameBoard.getSize() == GameBoard.DEFAULT_SIZE) {
+      pstmt.setNull(index + 5, Types.BLOB);
+    } else {
+      pstmt.setBytes(index + 5, encodeMarks(gameBoard.getBoardState()));
+    }
+    pstmt.setInt(index + 6, gameBoard.getWinLength());
+  }
+  
+  // Binds the ID and type of a player to two parameters, or NULL if the player is missing
+  private static void bindPlayer(PreparedStatement pstmt, int index, Player player) 
+      throws SQLException {
+    if (player == null) {
+      pstmt.setNull(index, Types.INTEGER);
+      pstmt.setNull(index + 1, Types.VARCHAR);
+    } else {
+      pstmt.setInt(index, player.getId());
+      pstmt.setString(index + 1, String.valueOf(player.getType()));
+    }
+  }
+  
+  /**
+   * Packs the state of a board into the BOARD column. The marks are only packed for 3x3
+   * boards.
+   * @param gameBoard the board
+   * @return the packed board
+   */
+  private static int packBoard(GameBoard gameBoard) {
+    int packed = ((gameBoard.getTurn() + 1) & 3) << TURN_SHIFT
+        | (gameBoard.getWinner() & 3) << WINNER_SHIFT
+        | (gameBoard.isDraw() ? DRAW_BIT : 0)
+        | (gameBoard.isGameStarted() ? STARTED_BIT : 0)
+        | (gameBoard.getSize() & SIZE_MASK) << SIZE_SHIFT
+        | (gameBoard.isComputerP2() ? COMPUTER_BIT : 0);
+    if (gameBoard.getSize() == GameBoard.DEFAULT_SIZE) {
+      packed |= gameBoard.getMarks('X') | gameBoard.getMarks('O') << O_SHIFT;
+    }
+    return packed;
+  }
+  
+  /**
+   * Rebuilds a board from the packed BOARD column and its marks.
+   * @param p1 player 1, or null
+   * @param p2 player 2, or null
+   * @param packed the BOARD column
+   * @param boardState the marks, unpacked from BOARD or read from MARKS
+   * @param winLength number of marks in a row that wins the game
+   * @return the game board
+   */
+  private static GameBoard unpackBoard(Player p1, Player p2, int packed, char[][] boardState, 
+      int winLength) {
+    return new GameBoard(p1, p2, (packed & STARTED_BIT) != 0, 
+        ((packed >>> TURN_SHIFT) & 3) - 1, boardState, (packed >>> WINNER_SHIFT) & 3, 
+        (packed & DRAW_BIT) != 0, winLength, (packed & COMPUTER_BIT) != 0);
+  }
+  
+  // Reads the marks of a row: from the BOARD column for a 3x3 board, otherwise from MARKS
+  private static char[][] readBoardState(ResultSet result, int packed) throws SQLException {
+    byte[] marks = result.getBytes("MARKS");
+    return marks == null ? unpackBoardState(packed) 
+        : decodeMarks(marks, (packed >>> SIZE_SHIFT) & SIZE_MASK);
+  }
+  
+  /**
+   * Encodes the marks of a board as laid out by BitBoard: the X marks and then the O marks,
+   * size * size bits each, in big-endian longs. A 15x15 board takes 64 bytes.
+   * @param boardState square board of player types
+   * @return the MARKS column
+   */
+  private static byte[] encodeMarks(char[][] boardState) {
+    int size = boardState.length;
+    int words = (size * size + 63) >>> 6;
+    ByteBuffer marks = ByteBuffer.allocate(words * 16);
+    for (int bit = 0; bit < size * size; bit++) {
+      char mark = boardState[bit / size][bit % size];
+      if (mark == 'X' || mark == 'O') {
+        int position = ((mark == 'X' ? 0 : words) + (bit >>> 6)) * 8;
+        marks.putLong(position, marks.getLong(position) | 1L << bit);
+      }
+    }
+    return marks.array();
+  }
+  
+  // Decodes the MARKS column of a board with the given number of rows and columns
+  private static char[][] decodeMarks(byte[] marks, int size) {
+    ByteBuffer words = ByteBuffer.wrap(marks);
+    int omarks = marks.length / 2;
+    char[][] boardState = new char[size][size];
+    for (int bit = 0; bit < size * size; bit++) {
+      long mask = 1L << bit;
+      if ((words.getLong((bit >>> 6) * 8) & mask) != 0) {
+        boardState[bit / size][bit % size] = 'X';
+      } else if ((words.getLong(omarks + (bit >>> 6) * 8) & mask) != 0) {
+        boardState[bit / size][bit % size] = 'O';
+      }
+    }
+    return boardState;
+  }
+  
+  // Unpacks the marks of a 3x3 board from the BOARD column
+  private static char[][] unpackBoardState(int packed) {
+    char[][] boardState = new char[GameBoard.DEFAULT_SIZE][GameBoard.DEFAULT_SIZE];
+    int xmarks = packed & MARKS;
+    int omarks = (packed >>> O_SHIFT) & MARKS;
+    for (int cell = 0; cell < 9; cell++) {
+      if ((xmarks & (1 << cell)) != 0) {
+        boardState[cell / 3][cell % 3] = 'X';
+      } else if ((omarks & (1 << cell)) != 0) {
+        boardState[cell / 3][cell % 3] = 'O';
+      }
+    }
+    return boardState;
+  }
+  
   /**
    * Retrieving data from the database. 
-   * @return GameBoard that was stored in the database
+   * @return GameBoard that was stored in the database, or null if the table is empty
    * @throws SQLException if problem with connection or statement 
    */
   public GameBoard getGameBoardData() throws SQLException {
-    Statement statement = connection.createStatement();
+    Reader reader = this.borrowReader();
+    ResultSet result = null;
     
     try {
-      System.out.println("Getting game board data from database.");
+      LOG.debug("Getting game board data from database");
       
-      String sql = "SELECT * FROM " + TABLE_NAME + " ORDER BY ID DESC LIMIT 1";
-      ResultSet result = statement.executeQuery(sql);
+      result = reader.select().executeQuery();
+      if (!result.next()) {
+        return null;
+      }
       
+      // A missing player reads as type N with ID 0, as it always has
       int p1Id = result.getInt("P1_ID");
-      char p1Type = result.getString("P1_TYPE").charAt(0);
+      String p1Type = result.getString("P1_TYPE");
       int p2Id = result.getInt("P2_ID");
-      char p2Type = result.getString("P2_TYPE").charAt(0);
-      boolean gameStarted = result.getBoolean("GAMESTARTED");
-      int turn = result.getInt("TURN");
-      String boardState = result.getString("BOARDSTATE");
-      int winner = result.getInt("WINNER");
-      boolean isDraw = result.getBoolean("ISDRAW");
-          
-      // Reconstructing the board state
-      int offset = 0;
-      char[][] boardStateFormat = new char [3][3];
-      for (int i = 0; i < boardStateFormat.length; i++) {
-        for (int j = 0; j < boardStateFormat.length; j++) {
-          char type = boardState.charAt(i + j + offset) == 'N' 
-              ? '\u0000' : boardState.charAt(i + j + offset);
-          boardStateFormat[i][j] = type;
+      String p2Type = result.getString("P2_TYPE");
+      int packed = result.getInt("BOARD");
+      
+      return unpackBoard(new Player(p1Type == null ? 'N' : p1Type.charAt(0), p1Id), 
+          new Player(p2Type == null ? 'N' : p2Type.charAt(0), p2Id), packed, 
+          readBoardState(result, packed), result.getInt("WIN_LENGTH"));
+    } finally {
+      if (result != null) {
+        result.close();
+      }
+      readers.add(reader);
+    }
+  }
+  
+  // Reconstructs the board state from its string representation, which holds size * size cells
+  private static char[][] decodeBoardState(String boardState) {
+    int size = (int) Math.round(Math.sqrt(boardState.length()));
+    char[][] boardStateFormat = new char[size][size];
+    for (int i = 0; i < boardStateFormat.length; i++) {
+      for (int j = 0; j < boardStateFormat[i].length; j++) {
+        char type = boardState.charAt(i * boardStateFormat[i].length + j);
+        boardStateFormat[i][j] = type == 'N' ? '\u0000' : type;
+      }
+    }
+    return boardStateFormat;
+  }
+  
+  /**
+   * Appends a move to the move log of a game in the current transaction, without committing.
+   * Every few moves, and when the game ends, the board is also snapshotted and the moves
+   * covered by the snapshot are deleted, so a game never replays more than a few moves.
+   * @param gameId ID of the game
+   * @param gameBoard the board after the move
+   * @param playerId player who made the move
+   * @param x x coordinate of the move
+   * @param y y coordinate of the move
+   * @throws SQLException if problem with connection or statement
+   */
+  public void appendMove(String gameId, GameBoard gameBoard, int playerId, int x, int y) 
+      throws SQLException {
+    int seq = gameBoard.getMoveCount();
+    try {
+      appendMoveStatement.setString(1, gameId);
+      appendMoveStatement.setInt(2, seq);
+      appendMoveStatement.setInt(3, playerId);
+      appendMoveStatement.setInt(4, x);
+      appendMoveStatement.setInt(5, y);
+      appendMoveStatement.executeUpdate();
+    } finally {
+      appendMoveStatement.clearParameters();
+    }
+    
+    if (seq % snapshotInterval == 0 || gameBoard.isGameOver()) {
+      this.snapshotGame(gameId, gameBoard);
+    }
+  }
+  
+  /**
+   * Stores a snapshot of a game in the current transaction, without committing, and deletes
+   * the moves and older snapshots it replaces. Used when the game starts, when player 2 
+   * joins, and every few moves.
+   * @param gameId ID of the game
+   * @param gameBoard the board to store
+   * @throws SQLException if problem with connection or statement
+   */
+  public void snapshotGame(String gameId, GameBoard gameBoard) throws SQLException {
+    int seq = gameBoard.getMoveCount();
+    try {
+      snapshotStatement.setString(1, gameId);
+      snapshotStatement.setInt(2, seq);
+      bindGameBoard(snapshotStatement, 3, gameBoard);
+      snapshotStatement.executeUpdate();
+    } finally {
+      snapshotStatement.clearParameters();
+    }
+    
+    // Compaction: the snapshot replaces every earlier move and snapshot
+    compactMovesStatement.setString(1, gameId);
+    compactMovesStatement.setInt(2, seq);
+    compactMovesStatement.executeUpdate();
+    compactSnapshotsStatement.setString(1, gameId);
+    compactSnapshotsStatement.setInt(2, seq);
+    compactSnapshotsStatement.executeUpdate();
+  }
+  
+  /**
+   * Deletes the move log and snapshots of a game in the current transaction, without 
+   * committing, e.g. before a new game replaces it.
+   * @param gameId ID of the game
+   * @throws SQLException if problem with connection or statement
+   */
+  public void deleteGame(String gameId) throws SQLException {
+    deleteMovesStatement.setString(1, gameId);
+    deleteMovesStatement.executeUpdate();
+    deleteSnapshotsStatement.setString(1, gameId);
+    deleteSnapshotsStatement.executeUpdate();
+  }
+  
+  /**
+   * Rebuilds a game from the move log by replaying the moves after its latest snapshot.
+   * @param gameId ID of the game
+   * @return the game board, or null if the game is not in the move log
+   * @throws SQLException if problem with connection or statement
+   */
+  public GameBoard getGameBoardData(String gameId) throws SQLException {
+    Reader reader = this.borrowReader();
+    
+    try {
+      PreparedStatement selectSnapshot = reader.selectSnapshot();
+      selectSnapshot.setString(1, gameId);
+      GameBoard gameBoard;
+      int seq;
+      try (ResultSet result = selectSnapshot.executeQuery()) {
+        if (!result.next()) {
+          return null;
         }
-        
-        offset += 2;
+        seq = result.getInt("SEQ");
+        int packed = result.getInt("BOARD");
+        gameBoard = unpackBoard(readPlayer(result, "P1_ID", "P1_TYPE"), 
+            readPlayer(result, "P2_ID", "P2_TYPE"), packed, readBoardState(result, packed), 
+            result.getInt("WIN_LENGTH"));
       }
       
-      GameBoard gameBoard = new GameBoard(new Player(p1Type, p1Id), new Player(p2Type, p2Id), 
-          gameStarted, turn, boardStateFormat, winner, isDraw);
-      
+      PreparedStatement selectMoves = reader.selectMoves();
+      selectMoves.setString(1, gameId);
+      selectMoves.setInt(2, seq);
+      try (ResultSet result = selectMoves.executeQuery()) {
+        while (result.next()) {
+          gameBoard.move(result.getInt("PLAYER_ID"), result.getInt("X"), result.getInt("Y"));
+        }
+      }
       return gameBoard;
     } finally {
-      statement.close();
+      readers.add(reader);
+    }
+  }
+  
+  // Reads a player from the given columns, or null if the player has not joined
+  private static Player readPlayer(ResultSet result, String idColumn, String typeColumn) 
+      throws SQLException {
+    String type = result.getString(typeColumn);
+    return type == null ? null : new Player(type.charAt(0), result.getInt(idColumn));
+  }
+  
+  /**
+   * Returns the IDs of the games in the move log.
+   * @return game IDs
+   * @throws SQLException if problem with connection or statement
+   */
+  public List<String> getGameIds() throws SQLException {
+    Reader reader = this.borrowReader();
+    
+    try (ResultSet result = reader.selectGameIds().executeQuery()) {
+      List<String> gameIds = new ArrayList<>();
+      while (result.next()) {
+        gameIds.add(result.getString(1));
+      }
+      return gameIds;
+    } finally {
+      readers.add(reader);
+    }
+  }
+  
+  /**
+   * Takes a read connection from the pool, waiting for one if all of them are in use.
+   * @return read connection, to be returned to the pool after use
+   * @throws SQLException if interrupted while waiting
+   */
+  private Reader borrowReader() throws SQLException {
+    try {
+      return readers.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a read connection", e);
     }
   }
   
@@ -197,18 +789,49 @@ public class SqliteDatabase {
    * @throws SQLException if problem with connection or statement 
    */
   public void cleanTable() throws SQLException {
-    Statement statement = connection.createStatement();
-    
     try {
-      connection.setAutoCommit(false);
-      String sql = "DELETE FROM " + TABLE_NAME;
-      statement.executeUpdate(sql);
+      this.deleteGameBoardData();
       connection.commit();
-    } finally {
-      statement.close();
+    } catch (SQLException e) {
+      connection.rollback();
+      throw e;
     }
     
-    System.out.println("Table cleaned successfully");  
+    LOG.debug("Table cleaned");
+  }
+  
+  /**
+   * Deletes all records in the current transaction without committing it.
+   * @throws SQLException if problem with connection or statement 
+   */
+  public void deleteGameBoardData() throws SQLException {
+    deleteStatement.executeUpdate();
+  }
+  
+  //  Returns the storage profile of the database
+  public StorageProfile getStorageProfile() {
+    return profile;
+  }
+  
+  //  Returns the background checkpointer of the write-ahead log
+  public WalCheckpointer getCheckpointer() {
+    return checkpointer;
+  }
+  
+  /**
+   * Commits the writes of the current transaction.
+   * @throws SQLException if problem with connection or statement 
+   */
+  public void commit() throws SQLException {
+    connection.commit();
+  }
+  
+  /**
+   * Discards the writes of the current transaction.
+   * @throws SQLException if problem with connection or statement 
+   */
+  public void rollback() throws SQLException {
+    connection.rollback();
   }
   
   /**
@@ -216,7 +839,57 @@ public class SqliteDatabase {
    * @throws SQLException if sqlite error
    */
   public void closeConenction() throws SQLException {
+    if (checkpointer != null) {
+      checkpointer.close();
+    }
+    Reader reader;
+    while ((reader = readers.poll()) != null) {
+      reader.connection.close();
+    }
     connection.close();
   }
   
+  /**
+   * A read connection with its prepared queries. Queries are prepared on first use.
+   */
+  private static final class Reader {
+    private final Connection connection;
+    private PreparedStatement select;
+    private PreparedStatement selectSnapshot;
+    private PreparedStatement selectMoves;
+    private PreparedStatement selectGameIds;
+    
+    private Reader(Connection connection) {
+      this.connection = connection;
+    }
+    
+    private PreparedStatement select() throws SQLException {
+      if (select == null) {
+        select = connection.prepareStatement(SELECT_SQL);
+      }
+      return select;
+    }
+    
+    private PreparedStatement selectSnapshot() throws SQLException {
+      if (selectSnapshot == null) {
+        selectSnapshot = connection.prepareStatement(SELECT_SNAPSHOT_SQL);
+      }
+      return selectSnapshot;
+    }
+    
+    private PreparedStatement selectMoves() throws SQLException {
+      if (selectMoves == null) {
+        selectMoves = connection.prepareStatement(SELECT_MOVES_SQL);
+      }
+      return selectMoves;
+    }
+    
+    private PreparedStatement selectGameIds() throws SQLException {
+      if (selectGameIds == null) {
+        selectGameIds = connection.prepareStatement(SELECT_GAME_IDS_SQL);
+      }
+      return selectGameIds;
+    }
+  }
+  
 }
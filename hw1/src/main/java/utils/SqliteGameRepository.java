@@ -0,0 +1,174 @@
+package utils;
+
+import java.sql.SQLException;
+import java.util.List;
+import models.BoardSnapshot;
+import models.GameBoard;
+
+public class SqliteGameRepository implements GameRepository {
+
+  private final SqliteDatabase db;
+  private final WriteBehindQueue writes;
+  private final boolean eventLog;
+  private final String defaultGameId;
+
+  /**
+   * Stores games in the SQLite database. Writes are queued on the write-behind queue, which
+   * converts each snapshot to a game board on its writer thread.
+   * With the move log, every game is stored as its moves and a snapshot every few moves.
+   * Without it, the default game is stored as a new row of the single-game table on every
+   * change, and every other game is still stored in the move log.
+   * @param db database to read from. Only the queue writes to it.
+   * @param writes queue that writes to the database
+   * @param eventLog true to store the default game in the move log too
+   * @param defaultGameId the game stored in the single-game table
+   */
+  public SqliteGameRepository(SqliteDatabase db, WriteBehindQueue writes, boolean eventLog,
+      String defaultGameId) {
+    this.db = db;
+    this.writes = writes;
+    this.eventLog = eventLog;
+    this.defaultGameId = defaultGameId;
+  }
+
+  /**
+   * Opens tictactoe.db with a write-behind queue, both configured by their system
+   * properties. The move log is used if tictactoe.persistence.eventLog is true.
+   * @param defaultGameId the game stored in the single-game table
+   * @return new repository
+   * @throws SQLException if problem with connection or statement
+   */
+  public static SqliteGameRepository fromSystemProperties(String defaultGameId)
+      throws SQLException {
+    SqliteDatabase db = new SqliteDatabase();
+    return new SqliteGameRepository(db, WriteBehindQueue.fromSystemProperties(db),
+        Boolean.getBoolean(SqliteDatabase.EVENT_LOG_PROPERTY), defaultGameId);
+  }
+
+  // Only the default game can be stored in the single-game table
+  private boolean isLogged(String gameId) {
+    return eventLog || !defaultGameId.equals(gameId);
+  }
+
+  @Override
+  public void save(String gameId, BoardSnapshot gameBoard) throws SQLException {
+    if (isLogged(gameId)) {
+      writes.submit(database -> database.snapshotGame(gameId, gameBoard.toGameBoard()));
+    } else {
+      writes.submit(database -> database.insertGameBoardData(gameBoard.toGameBoard()));
+    }
+  }
+
+  /**
+   * Queues a valid move. The move log only appends the move, while the single-game table
+   * stores the whole board again.
+   */
+  @Override
+  public void saveMove(String gameId, BoardSnapshot gameBoard, int playerId, int x, int y)
+      throws SQLException {
+    if (isLogged(gameId)) {
+      writes.submit(database ->
+          database.appendMove(gameId, gameBoard.toGameBoard(), playerId, x, y));
+    } else {
+      this.save(gameId, gameBoard);
+    }
+  }
+
+  /**
+   * Queues the deletion of the previous game and the new board as one write, so they are
+   * committed together.
+   */
+  @Override
+  public void replace(String gameId, BoardSnapshot gameBoard) throws SQLException {
+    if (isLogged(gameId)) {
+      writes.submit(database -> {
+        database.deleteGame(gameId);
+        database.snapshotGame(gameId, gameBoard.toGameBoard());
+      });
+    } else {
+      writes.submit(database -> {
+        database.deleteGameBoardData();
+        database.insertGameBoardData(gameBoard.toGameBoard());
+      });
+    }
+  }
+
+  /**
+   * Reads a game once the writes queued before have been committed.
+   */
+  @Override
+  public GameBoard load(String gameId) throws SQLException {
+    writes.flush();
+    return isLogged(gameId) ? db.getGameBoardData(gameId) : db.getGameBoardData();
+  }
+
+  @Override
+  public void delete(String gameId) throws SQLException {
+    if (isLogged(gameId)) {
+      writes.submit(database -> database.deleteGame(gameId));
+    } else {
+      writes.submit(SqliteDatabase::deleteGameBoardData);
+    }
+  }
+
+  // Without the move log for every game, the default game is in the single-game table
+  @Override
+  public List<String> list() throws SQLException {
+    writes.flush();
+    List<String> gameIds = db.getGameIds();
+    if (!eventLog) {
+      gameIds.remove(defaultGameId);
+      gameIds.add(0, defaultGameId);
+    }
+    return gameIds;
+  }
+
+  /**
+   * Registers the counters of the write-behind queue and of the checkpointer.
+   */
+  @Override
+  public void registerMetrics(MetricsRegistry metrics) {
+    String writeHelp = "Database writes by result.";
+    metrics.counter("tictactoe_db_writes_total", writeHelp, writes::getWritten,
+        "result", "written");
+    metrics.counter("tictactoe_db_writes_total", writeHelp, writes::getFailed,
+        "result", "failed");
+    metrics.counter("tictactoe_db_writes_total", writeHelp, writes::getDropped,
+        "result", "dropped");
+    metrics.counter("tictactoe_db_write_blocked_total",
+        "Writes that waited for room in the queue.", writes::getBlocked);
+    metrics.gauge("tictactoe_db_write_queue_depth", "Writes waiting in the queue.",
+        writes::getQueueDepth);
+    metrics.timer("tictactoe_db_write_seconds",
+        "Time to write and commit a batch of queued writes.", writes.getBatchTimer());
+
+    WalCheckpointer checkpointer = db.getCheckpointer();
+    metrics.counter("tictactoe_db_checkpoints_total",
+        "Checkpoints of the write-ahead log.", checkpointer::getCheckpoints);
+    metrics.counter("tictactoe_db_wal_truncations_total",
+        "Checkpoints that had to truncate an oversized write-ahead log.",
+        checkpointer::getTruncations);
+    metrics.gauge("tictactoe_db_wal_frames",
+        "Pages left in the write-ahead log after the last checkpoint.",
+        checkpointer::getWalFrames);
+  }
+
+  /**
+   * Writes the queued writes and closes the database.
+   */
+  @Override
+  public void close() throws SQLException {
+    writes.close();
+    db.closeConenction();
+  }
+
+  //  Returns the database the games are stored in
+  public SqliteDatabase getDatabase() {
+    return db;
+  }
+
+  //  Returns the queue that writes to the database
+  public WriteBehindQueue getWrites() {
+    return writes;
+  }
+}
@@ -0,0 +1,114 @@
+package utils;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class WalCheckpointer {
+
+  private static final AsyncLog LOG = AsyncLog.getLog(WalCheckpointer.class);
+
+  private final Connection connection;
+  private final int maxWalFrames;
+  private final ScheduledExecutorService scheduler;
+  private final LongAdder checkpoints;
+  private final LongAdder truncations;
+  private final AsyncLog.Sampler failures;
+  private volatile long walFrames;
+
+  /**
+   * Checkpoints the write-ahead log in the background, so that commits do not pay for
+   * copying the log back into the database. Every interval a passive checkpoint copies
+   * what it can without waiting for readers or the writer. If the log still holds more
+   * than maxWalFrames pages, e.g. because long reads kept pages pinned, a truncating
+   * checkpoint waits for the readers, copies everything and empties the log file.
+   * @param connection connection used only by the checkpointer
+   * @param interval time between checkpoints
+   * @param unit unit of the interval
+   * @param maxWalFrames pages the log may hold before it is truncated
+   */
+  public WalCheckpointer(Connection connection, long interval, TimeUnit unit,
+      int maxWalFrames) {
+    this.connection = connection;
+    this.maxWalFrames = maxWalFrames;
+    this.checkpoints = new LongAdder();
+    this.truncations = new LongAdder();
+    this.failures = new AsyncLog.Sampler(LOG, 10, TimeUnit.SECONDS);
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+      Thread thread = new Thread(task, "sqlite-checkpoint");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.scheduler.scheduleWithFixedDelay(this::run, interval, interval, unit);
+  }
+
+  private void run() {
+    try {
+      this.checkpoint();
+    } catch (SQLException e) {
+      failures.warn("Could not checkpoint the write-ahead log: {}", e.toString());
+    }
+  }
+
+  /**
+   * Runs a passive checkpoint now, and a truncating one if the log is still too large.
+   * @return pages left in the log
+   * @throws SQLException if problem with connection or statement
+   */
+  public synchronized long checkpoint() throws SQLException {
+    long remaining = this.checkpoint("PASSIVE");
+    if (remaining > maxWalFrames) {
+      remaining = this.checkpoint("TRUNCATE");
+      truncations.increment();
+      LOG.debug("Truncated the write-ahead log, {} pages left", remaining);
+    }
+    walFrames = remaining;
+    return remaining;
+  }
+
+  // Runs a checkpoint in the given mode and returns the pages not yet copied
+  private long checkpoint(String mode) throws SQLException {
+    try (Statement statement = connection.createStatement();
+        ResultSet result = statement.executeQuery("PRAGMA wal_checkpoint(" + mode + ")")) {
+      checkpoints.increment();
+      // Columns: busy, pages in the log, pages copied to the database
+      return result.next() ? Math.max(0, result.getLong(2) - result.getLong(3)) : 0;
+    }
+  }
+
+  /**
+   * Stops the checkpoints and closes the connection.
+   * @throws SQLException if the connection cannot be closed
+   */
+  public void close() throws SQLException {
+    scheduler.shutdown();
+    try {
+      scheduler.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      connection.close();
+    }
+  }
+
+  //  Returns the number of checkpoints run
+  public long getCheckpoints() {
+    return checkpoints.sum();
+  }
+
+  //  Returns the number of times the log had to be truncated
+  public long getTruncations() {
+    return truncations.sum();
+  }
+
+  //  Returns the pages left in the log after the last checkpoint
+  public long getWalFrames() {
+    return walFrames;
+  }
+}
@@ -0,0 +1,338 @@
+package utils;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class WriteBehindQueue {
+
+  public static final String DURABILITY_PROPERTY = "tictactoe.persistence.durability";
+  public static final String CAPACITY_PROPERTY = "tictactoe.persistence.queueCapacity";
+  private static final int DEFAULT_CAPACITY = 1024;
+  private static final int MAX_BATCH = 256;
+  private static final AsyncLog LOG = AsyncLog.getLog(WriteBehindQueue.class);
+
+  /**
+   * How long a caller waits for its write.
+   * SYNC waits until the write is committed.
+   * BATCHED returns once the write is queued, waiting only while the queue is full.
+   * FIRE_AND_FORGET never waits and drops the write if the queue is full.
+   */
+  public enum Durability {
+    SYNC, BATCHED, FIRE_AND_FORGET
+  }
+
+  /**
+   * A write to apply to the database. It must not commit, the queue commits whole batches.
+   */
+  public interface Write {
+    void apply(SqliteDatabase db) throws SQLException;
+  }
+
+  private final SqliteDatabase db;
+  private final Durability durability;
+  private final BlockingQueue<Entry> queue;
+  private final Thread writer;
+  // Held shared while queueing and exclusively while closing, so nothing is queued after
+  // the writer was told to stop
+  private final ReadWriteLock closeLock;
+  private volatile boolean closed;
+
+  private final LongAdder submitted;
+  private final LongAdder written;
+  private final LongAdder failed;
+  private final LongAdder dropped;
+  private final LongAdder blocked;
+  private final LongAdder batches;
+  private final MetricsRegistry.Timer batchTimer;
+  private final AsyncLog.Sampler failures;
+
+  /**
+   * Takes database writes off the caller's thread. A single writer thread drains the queue
+   * and applies up to 256 queued writes, from any number of games, in one transaction.
+   * @param db database to write to. Only the writer thread may write to it from now on.
+   * @param durability how long callers wait for their writes
+   * @param capacity number of writes that may be queued
+   */
+  public WriteBehindQueue(SqliteDatabase db, Durability durability, int capacity) {
+    this.db = db;
+    this.durability = durability;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.closeLock = new ReentrantReadWriteLock();
+    this.submitted = new LongAdder();
+    this.written = new LongAdder();
+    this.failed = new LongAdder();
+    this.dropped = new LongAdder();
+    this.blocked = new LongAdder();
+    this.batches = new LongAdder();
+    this.batchTimer = new MetricsRegistry.Timer();
+    this.failures = new AsyncLog.Sampler(LOG, 10, TimeUnit.SECONDS);
+
+    this.writer = new Thread(this::run, "sqlite-write-behind");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /**
+   * Creates a queue configured by the tictactoe.persistence.durability (default BATCHED) and
+   * tictactoe.persistence.queueCapacity (default 1024) system properties.
+   * @param db database to write to
+   * @return new queue
+   */
+  public static WriteBehindQueue fromSystemProperties(SqliteDatabase db) {
+    Durability durability = Durability.valueOf(
+        System.getProperty(DURABILITY_PROPERTY, Durability.BATCHED.name()));
+    return new WriteBehindQueue(db, durability,
+        Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+  }
+
+  /**
+   * Queues a write. Depending on the durability, waits for it to be committed.
+   * @param write the write
+   * @throws SQLException if the queue is closed, or in SYNC mode if the write failed
+   */
+  public void submit(Write write) throws SQLException {
+    Entry entry = new Entry(write, durability == Durability.SYNC 
+        ? new CompletableFuture<>() : null);
+    closeLock.readLock().lock();
+    try {
+      checkOpen();
+      submitted.increment();
+      if (durability != Durability.FIRE_AND_FORGET) {
+        put(entry);
+      } else if (!queue.offer(entry)) {
+        dropped.increment();
+        LOG.debug("Dropped a write, {} writes queued", queue.size());
+      }
+    } finally {
+      closeLock.readLock().unlock();
+    }
+    if (entry.done != null) {
+      await(entry.done);
+    }
+  }
+
+  /**
+   * Waits until every write queued so far has been applied.
+   * @throws SQLException if the queue is closed or interrupted
+   */
+  public void flush() throws SQLException {
+    Entry marker = new Entry(null, new CompletableFuture<>());
+    closeLock.readLock().lock();
+    try {
+      checkOpen();
+      put(marker);
+    } finally {
+      closeLock.readLock().unlock();
+    }
+    await(marker.done);
+  }
+
+  /**
+   * Applies the writes still queued and stops the writer thread. Writes queued while
+   * closing are still applied, and later ones are refused.
+   * @throws SQLException if interrupted
+   */
+  public void close() throws SQLException {
+    if (closed) {
+      return;
+    }
+    flush();
+    closeLock.writeLock().lock();
+    try {
+      closed = true;
+    } finally {
+      closeLock.writeLock().unlock();
+    }
+    writer.interrupt();
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while closing the write-behind queue", e);
+    }
+  }
+
+  private void checkOpen() throws SQLException {
+    if (closed) {
+      throw new SQLException("Write-behind queue is closed");
+    }
+  }
+
+  private void put(Entry entry) throws SQLException {
+    try {
+      if (!queue.offer(entry)) {
+        // Back pressure: wait for the writer to catch up
+        blocked.increment();
+        queue.put(entry);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while queueing a write", e);
+    }
+  }
+
+  private static void await(CompletableFuture<Void> done) throws SQLException {
+    try {
+      done.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a write", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof SQLException) {
+        throw (SQLException) e.getCause();
+      }
+      throw new SQLException(e.getCause());
+    }
+  }
+
+  // Writer thread: takes whatever is queued and commits it as one batch
+  private void run() {
+    List<Entry> batch = new ArrayList<>(MAX_BATCH);
+    while (!closed || !queue.isEmpty()) {
+      try {
+        batch.add(queue.take());
+      } catch (InterruptedException e) {
+        continue;
+      }
+      queue.drainTo(batch, MAX_BATCH - 1);
+      writeBatch(batch);
+      batch.clear();
+    }
+  }
+
+  /**
+   * Applies a batch in one transaction. If the transaction fails, the writes are retried one
+   * by one so that a single bad write does not lose the others. A write that throws an
+   * unchecked exception or an error fails like one that throws SQLException, so it cannot 
+   * stop the writer thread and leave the callers waiting.
+   * @param batch writes to apply
+   */
+  private void writeBatch(List<Entry> batch) {
+    batches.increment();
+    long start = System.nanoTime();
+    try {
+      for (Entry entry : batch) {
+        if (entry.write != null) {
+          entry.write.apply(db);
+        }
+      }
+      db.commit();
+      batchTimer.recordSince(start);
+      for (Entry entry : batch) {
+        complete(entry, null);
+      }
+    } catch (Throwable batchFailure) {
+      rollback();
+      for (Entry entry : batch) {
+        try {
+          if (entry.write != null) {
+            entry.write.apply(db);
+          }
+          db.commit();
+          complete(entry, null);
+        } catch (Throwable e) {
+          rollback();
+          complete(entry, e);
+        }
+      }
+      batchTimer.recordSince(start);
+    }
+  }
+
+  private void rollback() {
+    try {
+      db.rollback();
+    } catch (Throwable e) {
+      // The next commit reports the broken connection
+    }
+  }
+
+  private void complete(Entry entry, Throwable error) {
+    if (entry.write != null) {
+      if (error == null) {
+        written.increment();
+      } else {
+        failed.increment();
+        if (error instanceof Error) {
+          LOG.error("A write to the database failed with an error", error);
+        } else {
+          failures.warn("Could not write to the database: {}", error.toString());
+        }
+      }
+    }
+    if (entry.done != null) {
+      if (error == null) {
+        entry.done.complete(null);
+      } else {
+        entry.done.completeExceptionally(error);
+      }
+    }
+  }
+
+  //  Returns how long callers wait for their writes
+  public Durability getDurability() {
+    return durability;
+  }
+
+  //  Returns the number of writes waiting in the queue
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  //  Returns the number of writes submitted
+  public long getSubmitted() {
+    return submitted.sum();
+  }
+
+  //  Returns the number of writes committed
+  public long getWritten() {
+    return written.sum();
+  }
+
+  //  Returns the number of writes that failed
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  //  Returns the number of writes dropped because the queue was full
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  //  Returns the number of times a caller had to wait for room in the queue
+  public long getBlocked() {
+    return blocked.sum();
+  }
+
+  //  Returns the number of transactions committed by the writer
+  public long getBatches() {
+    return batches.sum();
+  }
+
+  //  Returns the timer of writing and committing each batch
+  public MetricsRegistry.Timer getBatchTimer() {
+    return batchTimer;
+  }
+
+  /**
+   * A queued write. Callers that wait for the write complete the future.
+   */
+  private static final class Entry {
+    private final Write write;
+    private final CompletableFuture<Void> done;
+
+    private Entry(Write write, CompletableFuture<Void> done) {
+      this.write = write;
+      this.done = done;
+    }
+  }
+}
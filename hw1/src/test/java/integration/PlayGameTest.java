@@ -1,11 +1,25 @@
 package integration;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import com.google.gson.Gson;
 import controllers.PlayGame;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import kong.unirest.HttpResponse;
 import kong.unirest.Unirest;
 import kong.unirest.json.JSONObject;
@@ -19,6 +33,9 @@ import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestMethodOrder;
+import utils.GameRepository;
+import utils.MappedGameRepository;
+import utils.SqliteDatabase;
 
 @TestMethodOrder(OrderAnnotation.class) 
 public class PlayGameTest {
@@ -864,6 +881,472 @@ public class PlayGameTest {
     assertEquals(gameBoard.getBoardState()[0][1], '\u0000');
   }
 
+  /**
+   * Games addressed by game ID are independent of each other and of the default game.
+   */
+  @Test
+  @Order(33)
+  public void separateGamesTest() {
+    Unirest.post("http://localhost:8080/game/a/startgame").body("type=X").asString();
+    Unirest.get("http://localhost:8080/game/a/joingame").asString();
+    Unirest.post("http://localhost:8080/game/b/startgame").body("type=O").asString();
+    Unirest.get("http://localhost:8080/game/b/joingame").asString();
+    
+    HttpResponse<?> responseMove = Unirest.post("http://localhost:8080/game/a/move/1")
+        .body("x=0&y=0").asString();
+    Gson gson = new Gson();
+    Message msg = gson.fromJson((String) responseMove.getBody(), Message.class);
+    assertEquals(msg.isMoveValidity(), true);
+    
+    HttpResponse<?> responseBoard = Unirest.get("http://localhost:8080/game/a/gameBoard").asString();
+    GameBoard gameA = gson.fromJson((String) responseBoard.getBody(), GameBoard.class);
+    responseBoard = Unirest.get("http://localhost:8080/game/b/gameBoard").asString();
+    GameBoard gameB = gson.fromJson((String) responseBoard.getBody(), GameBoard.class);
+    
+    assertEquals(gameA.getBoardState()[0][0], 'X');
+    assertEquals(gameA.getTurn(), 2);
+    assertEquals(gameB.getP1().getType(), 'O');
+    assertEquals(gameB.getBoardState()[0][0], '\u0000');
+    assertEquals(gameB.getTurn(), 1);
+    
+    responseBoard = Unirest.get("http://localhost:8080/gameBoard").asString();
+    assertEquals(responseBoard.getBody(), "Game has not been created yet");
+  }
+  
+  /**
+   * Moves on a game ID that was never created are rejected, and its board is reported as
+   * not created, with or without a long poll.
+   */
+  @Test
+  @Order(34)
+  public void unknownGameTest() {
+    HttpResponse<?> responseMove = Unirest.post("http://localhost:8080/game/none/move/1")
+        .body("x=0&y=0").asString();
+    assertEquals(responseMove.getBody(), "Game has not started yet");
+    
+    HttpResponse<?> responseBoard = Unirest.get("http://localhost:8080/game/none/gameBoard")
+        .asString();
+    assertEquals(responseBoard.getStatus(), 200);
+    assertEquals(responseBoard.getBody(), "Game has not been created yet");
+    
+    // A long poll answers the same, without waiting for the game to be created
+    responseBoard = Unirest.get("http://localhost:8080/game/none/gameBoard")
+        .queryString("waitForVersion", 0).asString();
+    assertEquals(responseBoard.getStatus(), 200);
+    assertEquals(responseBoard.getBody(), "Game has not been created yet");
+  }
+
+  /**
+   * A web socket following a game only receives the boards of that game.
+   * @throws Exception if the web socket cannot connect
+   */
+  @Test
+  @Order(35)
+  public void gameTopicWebSocketTest() throws Exception {
+    BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    WebSocket socket = HttpClient.newHttpClient().newWebSocketBuilder()
+        .buildAsync(URI.create("ws://localhost:8080/gameboard/t1"), new WebSocket.Listener() {
+          @Override
+          public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            received.add(data.toString());
+            webSocket.request(1);
+            return null;
+          }
+        }).get(5, TimeUnit.SECONDS);
+    
+    Unirest.post("http://localhost:8080/game/t2/startgame").body("type=X").asString();
+    Unirest.get("http://localhost:8080/game/t2/joingame").asString();
+    Unirest.post("http://localhost:8080/game/t1/startgame").body("type=O").asString();
+    Unirest.get("http://localhost:8080/game/t1/joingame").asString();
+    
+    String message = received.poll(5, TimeUnit.SECONDS);
+    GameBoard gameBoard = new Gson().fromJson(message, GameBoard.class);
+    assertEquals(gameBoard.getP1().getType(), 'O');
+    assertEquals(gameBoard.isGameStarted(), true);
+    assertEquals(received.poll(200, TimeUnit.MILLISECONDS), null);
+    
+    socket.sendClose(WebSocket.NORMAL_CLOSURE, "").get(5, TimeUnit.SECONDS);
+  }
+  
+  /**
+   * A web socket in the delta format gets a snapshot on connect and a delta for each move.
+   * @throws Exception if the web socket cannot connect
+   */
+  @Test
+  @Order(36)
+  public void deltaWebSocketTest() throws Exception {
+    Unirest.post("http://localhost:8080/game/d1/startgame").body("type=X").asString();
+    
+    BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    WebSocket socket = HttpClient.newHttpClient().newWebSocketBuilder()
+        .buildAsync(URI.create("ws://localhost:8080/gameboard/d1?format=delta"), 
+            new WebSocket.Listener() {
+              @Override
+              public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, 
+                  boolean last) {
+                received.add(data.toString());
+                webSocket.request(1);
+                return null;
+              }
+            }).get(5, TimeUnit.SECONDS);
+    
+    JSONObject connected = new JSONObject(received.poll(5, TimeUnit.SECONDS));
+    assertEquals(connected.getString("type"), "snapshot");
+    assertEquals(connected.getJSONObject("board").getJSONObject("p1").getString("type"), "X");
+    
+    Unirest.get("http://localhost:8080/game/d1/joingame").asString();
+    JSONObject joined = new JSONObject(received.poll(5, TimeUnit.SECONDS));
+    assertEquals(joined.getString("type"), "snapshot");
+    assertEquals(joined.getJSONObject("board").getBoolean("gameStarted"), true);
+    
+    Unirest.post("http://localhost:8080/game/d1/move/1").body("x=1&y=2").asString();
+    JSONObject delta = new JSONObject(received.poll(5, TimeUnit.SECONDS));
+    assertEquals(delta.getString("type"), "delta");
+    assertEquals(delta.getLong("base"), joined.getLong("version"));
+    assertEquals(delta.getInt("x"), 1);
+    assertEquals(delta.getInt("y"), 2);
+    assertEquals(delta.getString("mark"), "X");
+    assertEquals(delta.getInt("turn"), 2);
+    
+    socket.sendText("snapshot", true).get(5, TimeUnit.SECONDS);
+    JSONObject resync = new JSONObject(received.poll(5, TimeUnit.SECONDS));
+    assertEquals(resync.getString("type"), "snapshot");
+    assertEquals(resync.getLong("version"), delta.getLong("version"));
+    
+    socket.sendClose(WebSocket.NORMAL_CLOSURE, "").get(5, TimeUnit.SECONDS);
+  }
+  
+  /**
+   * With the move log, every game is rebuilt from its moves after a crash.
+   * @throws SQLException if problem with connection or statement
+   */
+  @Test
+  @Order(37)
+  public void eventLogCrashTest() throws SQLException {
+    System.setProperty(SqliteDatabase.EVENT_LOG_PROPERTY, "true");
+    try {
+      PlayGame.stop();
+      PlayGame.main(new String[0]);
+      
+      Unirest.get("http://localhost:8080/game/log/newgame").asString();
+      Unirest.post("http://localhost:8080/game/log/startgame").body("type=O").asString();
+      Unirest.get("http://localhost:8080/game/log/joingame").asString();
+      int[][] moves = {{0, 0}, {1, 1}, {0, 1}, {2, 2}, {0, 2}};
+      for (int i = 0; i < moves.length; i++) {
+        Unirest.post("http://localhost:8080/game/log/move/" + (i % 2 + 1))
+            .body("x=" + moves[i][0] + "&y=" + moves[i][1]).asString();
+      }
+      HttpResponse<?> before = Unirest.get("http://localhost:8080/game/log/gameBoard").asString();
+      
+      PlayGame.stop();
+      PlayGame.main(new String[0]);
+      
+      HttpResponse<?> after = Unirest.get("http://localhost:8080/game/log/gameBoard").asString();
+      assertEquals(before.getBody(), after.getBody());
+      GameBoard gameBoard = new Gson().fromJson((String) after.getBody(), GameBoard.class);
+      assertEquals(gameBoard.getWinner(), 1);
+      assertEquals(gameBoard.getP2().getType(), 'X');
+    } finally {
+      System.clearProperty(SqliteDatabase.EVENT_LOG_PROPERTY);
+      PlayGame.stop();
+      PlayGame.main(new String[0]);
+    }
+  }
+  
+  /**
+   * Moves, requests, broadcasts and database writes are counted on /metrics.
+   */
+  @Test
+  @Order(38)
+  public void metricsTest() {
+    Unirest.post("http://localhost:8080/startgame").body("type=X").asString();
+    Unirest.get("http://localhost:8080/joingame").asString();
+    Unirest.post("http://localhost:8080/move/1").body("x=0&y=0").asString();
+    Unirest.post("http://localhost:8080/move/1").body("x=0&y=1").asString();
+    
+    HttpResponse<String> response = Unirest.get("http://localhost:8080/metrics").asString();
+    assertEquals(response.getStatus(), 200);
+    assertThat(response.getHeaders().getFirst("Content-Type")).startsWith("text/plain");
+    String metrics = response.getBody();
+    assertThat(metrics).contains("tictactoe_moves_total{code=\"100\"} 1\n");
+    assertThat(metrics).contains("tictactoe_moves_total{code=\"200\"} 1\n");
+    assertThat(metrics).contains("tictactoe_http_request_seconds_count{method=\"POST\","
+        + "route=\"/move/:playerId\",status=\"200\"} 2\n");
+    assertThat(metrics).contains("# TYPE tictactoe_broadcast_fanout_seconds histogram");
+    assertThat(metrics).contains("tictactoe_broadcast_messages_total{result=\"dropped\"} 0");
+    assertThat(metrics).contains("# TYPE tictactoe_db_write_seconds histogram");
+    assertThat(metrics).contains("tictactoe_db_writes_total{result=\"failed\"} 0");
+  }
+  
+  /**
+  * This is a test case to evaluate the ETag of the game board and the 304 Not Modified
+  * response to a client that already has the current version.
+  */
+  @Test
+  @Order(39)
+  public void conditionalGetTest() {
+    Unirest.post("http://localhost:8080/startgame").body("type=X").asString();
+    
+    HttpResponse<String> response = Unirest.get("http://localhost:8080/gameBoard").asString();
+    assertEquals(response.getStatus(), 200);
+    String etag = response.getHeaders().getFirst("ETag");
+    assertThat(etag).matches("\"[0-9a-z]+-[0-9]+\"");
+    
+    // The client already has this version
+    response = Unirest.get("http://localhost:8080/gameBoard")
+        .header("If-None-Match", etag).asString();
+    assertEquals(response.getStatus(), 304);
+    assertEquals(response.getBody(), "");
+    assertEquals(response.getHeaders().getFirst("ETag"), etag);
+    
+    // Player 2 joining changes the version
+    Unirest.get("http://localhost:8080/joingame").asString();
+    response = Unirest.get("http://localhost:8080/gameBoard")
+        .header("If-None-Match", etag).asString();
+    assertEquals(response.getStatus(), 200);
+    assertThat(response.getHeaders().getFirst("ETag")).isNotEqualTo(etag);
+    GameBoard gameBoard = new Gson().fromJson(response.getBody(), GameBoard.class);
+    assertEquals(gameBoard.isGameStarted(), true);
+  }
+  
+  /**
+  * This is a test case to evaluate the long poll, which answers once the board changes.
+  */
+  @Test
+  @Order(40)
+  public void longPollTest() throws Exception {
+    Unirest.post("http://localhost:8080/startgame").body("type=X").asString();
+    Unirest.get("http://localhost:8080/joingame").asString();
+    String etag = Unirest.get("http://localhost:8080/gameBoard").asString()
+        .getHeaders().getFirst("ETag");
+    long version = Long.parseLong(etag.substring(etag.indexOf('-') + 1, etag.length() - 1));
+    
+    // An older version is answered at once
+    HttpResponse<String> response = Unirest.get("http://localhost:8080/gameBoard")
+        .queryString("waitForVersion", version - 1).asString();
+    assertEquals(response.getStatus(), 200);
+    assertEquals(response.getHeaders().getFirst("ETag"), etag);
+    
+    // The current version waits for the next move
+    CompletableFuture<HttpResponse<String>> poll = Unirest.get("http://localhost:8080/gameBoard")
+        .queryString("waitForVersion", version).asStringAsync();
+    Thread.sleep(200);
+    assertEquals(poll.isDone(), false);
+    
+    Unirest.post("http://localhost:8080/move/1").body("x=1&y=1").asString();
+    response = poll.get(5, TimeUnit.SECONDS);
+    assertEquals(response.getStatus(), 200);
+    assertThat(response.getHeaders().getFirst("ETag")).isNotEqualTo(etag);
+    GameBoard gameBoard = new Gson().fromJson(response.getBody(), GameBoard.class);
+    assertEquals(gameBoard.getBoardState()[1][1], 'X');
+    
+    response = Unirest.get("http://localhost:8080/gameBoard")
+        .queryString("waitForVersion", "soon").asString();
+    assertEquals(response.getStatus(), 400);
+  }
+  
+  /**
+  * This is a test case to evaluate a game against the computer, which answers every move
+  * of player 1 in the same request.
+  */
+  @Test
+  @Order(41)
+  public void computerGameTest() {
+    Unirest.post("http://localhost:8080/startgame").body("type=X").asString();
+    HttpResponse<String> response = Unirest.get("http://localhost:8080/joingame")
+        .queryString("computer", "true").asString();
+    assertEquals(response.getStatus(), 200);
+    
+    response = Unirest.post("http://localhost:8080/move/1").body("x=0&y=0").asString();
+    assertEquals(new JSONObject(response.getBody()).getBoolean("moveValidity"), true);
+    
+    GameBoard gameBoard = new Gson().fromJson(
+        Unirest.get("http://localhost:8080/gameBoard").asString().getBody(), GameBoard.class);
+    assertEquals(gameBoard.getP2().getType(), 'O');
+    assertEquals(gameBoard.getBoardState()[1][1], 'O');
+    assertEquals(gameBoard.getTurn(), 1);
+    
+    // Player 2 is taken by the computer
+    response = Unirest.post("http://localhost:8080/move/2").body("x=2&y=2").asString();
+    assertEquals(new JSONObject(response.getBody()).getBoolean("moveValidity"), false);
+  }
+  
+  /**
+  * This is a test case to evaluate a 15x15 game with 5 in a row to win.
+  */
+  @Test
+  @Order(42)
+  public void largeBoardTest() {
+    HttpResponse<String> response = Unirest.post("http://localhost:8080/game/gomoku/startgame")
+        .body("type=X&size=2").asString();
+    assertThat(response.getBody()).startsWith("Please use a size between 3 and 32");
+    response = Unirest.post("http://localhost:8080/game/gomoku/startgame")
+        .body("type=X&size=15&winLength=five").asString();
+    assertEquals(response.getStatus(), 400);
+    assertThat(response.getBody()).startsWith("Please use a size between 3 and 32");
+    
+    response = Unirest.post("http://localhost:8080/game/gomoku/startgame")
+        .body("type=X&size=15").asString();
+    GameBoard gameBoard = new Gson().fromJson(response.getBody(), GameBoard.class);
+    assertEquals(gameBoard.getBoardState().length, 15);
+    
+    response = Unirest.get("http://localhost:8080/game/gomoku/joingame")
+        .queryString("computer", "true").asString();
+    assertEquals(response.getBody(), "The computer only plays 3x3 games.");
+    Unirest.get("http://localhost:8080/game/gomoku/joingame").asString();
+    
+    for (int i = 0; i < 4; i++) {
+      Unirest.post("http://localhost:8080/game/gomoku/move/1").body("x=7&y=" + (3 + i)).asString();
+      Unirest.post("http://localhost:8080/game/gomoku/move/2").body("x=0&y=" + i).asString();
+    }
+    response = Unirest.post("http://localhost:8080/game/gomoku/move/1").body("x=7&y=7")
+        .asString();
+    assertEquals(new JSONObject(response.getBody()).getBoolean("moveValidity"), true);
+    
+    gameBoard = new Gson().fromJson(
+        Unirest.get("http://localhost:8080/game/gomoku/gameBoard").asString().getBody(), 
+        GameBoard.class);
+    assertEquals(gameBoard.getWinner(), 1);
+    assertEquals(gameBoard.getBoardState()[7][7], 'X');
+  }
+  
+  /**
+   * With the memory-mapped backend, every game is restored from its record after a restart,
+   * and a game whose ID does not fit a record is refused.
+   * @throws IOException if the temporary file cannot be created
+   * @throws SQLException if the game store cannot be opened
+   */
+  @Test
+  @Order(43)
+  public void mappedBackendRestartTest() throws IOException, SQLException {
+    Path file = Files.createTempFile("tictactoe", ".games");
+    System.setProperty(GameRepository.BACKEND_PROPERTY, "MAPPED");
+    System.setProperty(MappedGameRepository.FILE_PROPERTY, file.toString());
+    try {
+      PlayGame.stop();
+      PlayGame.main(new String[0]);
+      
+      Unirest.get("http://localhost:8080/game/mapped/newgame").asString();
+      Unirest.post("http://localhost:8080/game/mapped/startgame").body("type=X").asString();
+      Unirest.get("http://localhost:8080/game/mapped/joingame").asString();
+      Unirest.post("http://localhost:8080/game/mapped/move/1").body("x=1&y=1").asString();
+      Unirest.post("http://localhost:8080/game/large/startgame").body("type=O&size=9")
+          .asString();
+      HttpResponse<?> mapped = Unirest.get("http://localhost:8080/game/mapped/gameBoard")
+          .asString();
+      HttpResponse<?> large = Unirest.get("http://localhost:8080/game/large/gameBoard")
+          .asString();
+      
+      PlayGame.stop();
+      PlayGame.main(new String[0]);
+      
+      assertEquals(mapped.getBody(), 
+          Unirest.get("http://localhost:8080/game/mapped/gameBoard").asString().getBody());
+      assertEquals(large.getBody(), 
+          Unirest.get("http://localhost:8080/game/large/gameBoard").asString().getBody());
+      HttpResponse<String> response = Unirest.post("http://localhost:8080/game/mapped/move/2")
+          .body("x=0&y=0").asString();
+      assertEquals(new JSONObject(response.getBody()).getBoolean("moveValidity"), true);
+      
+      // An ID that does not fit a record is refused on every end point of the game
+      String longId = String.join("", Collections.nCopies(33, "g"));
+      response = Unirest.post("http://localhost:8080/game/" + longId + "/startgame")
+          .body("type=X").asString();
+      assertEquals(response.getStatus(), 400);
+      assertEquals(Unirest.get("http://localhost:8080/game/" + longId + "/gameBoard")
+          .asString().getStatus(), 400);
+    } finally {
+      System.clearProperty(GameRepository.BACKEND_PROPERTY);
+      System.clearProperty(MappedGameRepository.FILE_PROPERTY);
+      PlayGame.stop();
+      Files.deleteIfExists(file);
+      PlayGame.main(new String[0]);
+    }
+  }
+  
+  /**
+   * An ETag from before a restart does not match the restored board, even where the version
+   * starts over at the same number, and a long poll for a version from before the restart
+   * is answered by the next change.
+   * @throws Exception if the long poll fails
+   */
+  @Test
+  @Order(44)
+  public void etagAfterRestartTest() throws Exception {
+    Unirest.get("http://localhost:8080/gameBoard").asString();
+    Unirest.post("http://localhost:8080/startgame").body("type=X").asString();
+    String etag = Unirest.get("http://localhost:8080/gameBoard").asString()
+        .getHeaders().getFirst("ETag");
+    
+    PlayGame.stop();
+    PlayGame.main(new String[0]);
+    
+    HttpResponse<String> response = Unirest.get("http://localhost:8080/gameBoard")
+        .header("If-None-Match", etag).asString();
+    assertEquals(response.getStatus(), 200);
+    assertEquals(new Gson().fromJson(response.getBody(), GameBoard.class).getP1().getType(), 
+        'X');
+    assertThat(response.getHeaders().getFirst("ETag")).isNotEqualTo(etag);
+    
+    CompletableFuture<HttpResponse<String>> poll = Unirest.get("http://localhost:8080/gameBoard")
+        .queryString("waitForVersion", 1000).asStringAsync();
+    Thread.sleep(200);
+    assertEquals(poll.isDone(), false);
+    Unirest.get("http://localhost:8080/joingame").asString();
+    response = poll.get(5, TimeUnit.SECONDS);
+    GameBoard gameBoard = new Gson().fromJson(response.getBody(), GameBoard.class);
+    assertEquals(gameBoard.isGameStarted(), true);
+  }
+  
+  /**
+   * A game against the computer is restored with the computer as player 2, so it still
+   * answers the moves of player 1 after a restart.
+   * @throws SQLException if the game store cannot be opened
+   */
+  @Test
+  @Order(45)
+  public void computerGameRestartTest() throws SQLException {
+    Unirest.get("http://localhost:8080/gameBoard").asString();
+    Unirest.post("http://localhost:8080/startgame").body("type=X").asString();
+    Unirest.get("http://localhost:8080/joingame").queryString("computer", "true").asString();
+    
+    PlayGame.stop();
+    PlayGame.main(new String[0]);
+    
+    Unirest.get("http://localhost:8080/gameBoard").asString();
+    HttpResponse<String> response = Unirest.post("http://localhost:8080/move/1")
+        .body("x=0&y=0").asString();
+    assertEquals(new JSONObject(response.getBody()).getBoolean("moveValidity"), true);
+    GameBoard gameBoard = new Gson().fromJson(
+        Unirest.get("http://localhost:8080/gameBoard").asString().getBody(), GameBoard.class);
+    assertEquals(gameBoard.getBoardState()[1][1], 'O');
+    assertEquals(gameBoard.getTurn(), 1);
+  }
+  
+  /**
+   * A game store that cannot be read stops the server from starting, instead of running
+   * without persistence.
+   * @throws IOException if the temporary file cannot be written
+   * @throws SQLException if the server cannot be started again
+   */
+  @Test
+  @Order(46)
+  public void unreadableStoreTest() throws IOException, SQLException {
+    Path file = Files.createTempFile("tictactoe", ".games");
+    Files.write(file, new byte[100]);
+    System.setProperty(GameRepository.BACKEND_PROPERTY, "MAPPED");
+    System.setProperty(MappedGameRepository.FILE_PROPERTY, file.toString());
+    try {
+      PlayGame.stop();
+      assertThrows(SQLException.class, () -> PlayGame.main(new String[0]));
+    } finally {
+      System.clearProperty(GameRepository.BACKEND_PROPERTY);
+      System.clearProperty(MappedGameRepository.FILE_PROPERTY);
+      Files.deleteIfExists(file);
+      PlayGame.main(new String[0]);
+    }
+  }
+  
   /**
    * This method runs at the end to stop the server.
    */
@@ -0,0 +1,104 @@
+package load;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram {
+
+  // Values below 2048 get their own bucket, larger values keep their top 11 bits,
+  // so every recorded value is exact to within 0.1%
+  private static final int SUB_BUCKETS = 1024;
+  private static final int LEVELS = 40;
+
+  private final AtomicLongArray counts;
+  private final LongAdder count;
+  private final LongAdder sum;
+  private volatile long max;
+
+  /**
+   * A latency histogram that any number of threads can record into without locking.
+   * Percentiles are read back with a relative error below 0.1%.
+   */
+  public LatencyHistogram() {
+    this.counts = new AtomicLongArray(SUB_BUCKETS * (LEVELS + 1));
+    this.count = new LongAdder();
+    this.sum = new LongAdder();
+  }
+
+  /**
+   * Records a latency.
+   * @param micros latency in microseconds, negative values count as 0
+   */
+  public void record(long micros) {
+    long value = Math.max(0, micros);
+    counts.incrementAndGet(indexOf(value));
+    count.increment();
+    sum.add(value);
+    if (value > max) {
+      synchronized (this) {
+        if (value > max) {
+          max = value;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the latency below which the given fraction of the recorded latencies fall.
+   * @param quantile fraction between 0 and 1, e.g. 0.99 for p99
+   * @return latency in microseconds, or 0 if nothing was recorded
+   */
+  public long percentile(double quantile) {
+    long total = getCount();
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(valueOf(i), max);
+      }
+    }
+    return max;
+  }
+
+  //  Returns the number of recorded latencies
+  public long getCount() {
+    return count.sum();
+  }
+
+  //  Returns the mean latency in microseconds
+  public double getMean() {
+    long total = getCount();
+    return total == 0 ? 0 : (double) sum.sum() / total;
+  }
+
+  //  Returns the largest recorded latency in microseconds
+  public long getMax() {
+    return max;
+  }
+
+  // Returns the bucket of a value
+  static int indexOf(long value) {
+    if (value < 2 * SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - 10;
+    if (shift > LEVELS - 1) {
+      return SUB_BUCKETS * (LEVELS + 1) - 1;
+    }
+    return SUB_BUCKETS * (shift + 1) + (int) ((value >> shift) - SUB_BUCKETS);
+  }
+
+  // Returns the largest value of a bucket
+  static long valueOf(int index) {
+    if (index < 2 * SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long lowest = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+}
@@ -0,0 +1,249 @@
+package load;
+
+import com.google.gson.Gson;
+import controllers.PlayGame;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import models.GameBoard;
+
+/**
+ * Load generator that plays full games against the per-game end points. Every match joins
+ * both players, follows its game on /gameboard/:gameId and plays random moves until the game
+ * is won or drawn, then starts over. Latencies are reported per end point, with "broadcast"
+ * being the time from sending a move until the web socket receives the new board.
+ * 
+ * <p>Run with mvn -Pload test-compile exec:exec and configure it with:
+ * load.target (default embedded, which starts PlayGame in the same JVM, or e.g. 
+ * http://localhost:8080), load.matches (concurrent matches, default 50), 
+ * load.warmup (seconds not measured, default 5) and load.duration (seconds measured, 
+ * default 30).
+ */
+public class LoadGenerator {
+
+  private static final String[] ENDPOINTS = {"startgame", "joingame", "move", "broadcast"};
+  private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+  private final String httpBase;
+  private final String wsBase;
+  private final int matches;
+  private final long warmupEnd;
+  private final long end;
+  private final HttpClient client;
+  private final Map<String, LatencyHistogram> histograms;
+  private final LongAdder games;
+  private final LongAdder errors;
+  private final Gson gson;
+
+  /**
+   * Creates a load generator.
+   * @param target base URL of the server, e.g. http://localhost:8080
+   * @param matches number of matches played at the same time
+   * @param warmupSeconds seconds played before latencies are recorded
+   * @param durationSeconds seconds during which latencies are recorded
+   */
+  public LoadGenerator(String target, int matches, int warmupSeconds, int durationSeconds) {
+    this.httpBase = target;
+    this.wsBase = target.replaceFirst("^http", "ws");
+    this.matches = matches;
+    long now = System.nanoTime();
+    this.warmupEnd = now + TimeUnit.SECONDS.toNanos(warmupSeconds);
+    this.end = warmupEnd + TimeUnit.SECONDS.toNanos(durationSeconds);
+    this.client = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+    this.histograms = new LinkedHashMap<>();
+    for (String endpoint : ENDPOINTS) {
+      histograms.put(endpoint, new LatencyHistogram());
+    }
+    this.games = new LongAdder();
+    this.errors = new LongAdder();
+    this.gson = new Gson();
+  }
+
+  /**
+   * Main method of the load generator.
+   * @param args not used, see the system properties in the class comment
+   * @throws Exception if the embedded server cannot start or the run is interrupted
+   */
+  public static void main(final String[] args) throws Exception {
+    String target = System.getProperty("load.target", "embedded");
+    boolean embedded = target.isEmpty() || "embedded".equals(target);
+    if (embedded) {
+      PlayGame.main(new String[0]);
+      target = "http://localhost:8080";
+    }
+
+    int durationSeconds = Integer.getInteger("load.duration", 30);
+    LoadGenerator generator = new LoadGenerator(target, Integer.getInteger("load.matches", 50),
+        Integer.getInteger("load.warmup", 5), durationSeconds);
+    try {
+      generator.run();
+      generator.report(durationSeconds);
+    } finally {
+      if (embedded) {
+        PlayGame.stop();
+      }
+    }
+    System.exit(0);
+  }
+
+  /**
+   * Plays the matches until the run is over.
+   * @throws InterruptedException if interrupted while waiting for the matches
+   */
+  public void run() throws InterruptedException {
+    CountDownLatch done = new CountDownLatch(matches);
+    for (int i = 0; i < matches; i++) {
+      String gameId = "load-" + i;
+      Random random = new Random(i);
+      Thread match = new Thread(() -> {
+        try {
+          playMatch(gameId, random);
+        } finally {
+          done.countDown();
+        }
+      }, gameId);
+      match.start();
+    }
+    done.await();
+  }
+
+  // Plays games on one game ID until the run is over
+  private void playMatch(String gameId, Random random) {
+    BlockingQueue<String> boards = new LinkedBlockingQueue<>();
+    WebSocket socket;
+    try {
+      socket = client.newWebSocketBuilder()
+          .buildAsync(URI.create(wsBase + "/gameboard/" + gameId), new WebSocket.Listener() {
+            private final StringBuilder text = new StringBuilder();
+
+            @Override
+            public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, 
+                boolean last) {
+              text.append(data);
+              if (last) {
+                boards.add(text.toString());
+                text.setLength(0);
+              }
+              webSocket.request(1);
+              return null;
+            }
+          }).get(TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+    } catch (Exception e) {
+      errors.increment();
+      return;
+    }
+
+    while (System.nanoTime() < end) {
+      try {
+        playGame(gameId, random, boards);
+        games.increment();
+      } catch (Exception e) {
+        errors.increment();
+        boards.clear();
+      }
+    }
+    socket.sendClose(WebSocket.NORMAL_CLOSURE, "");
+  }
+
+  /**
+   * Plays one game: player 1 starts it, player 2 joins and both play random open cells.
+   * @param gameId ID of the game
+   * @param random source of the moves
+   * @param boards boards received by the web socket following the game
+   * @throws Exception if a request fails or a board is not broadcast in time
+   */
+  private void playGame(String gameId, Random random, BlockingQueue<String> boards) 
+      throws Exception {
+    String base = httpBase + "/game/" + gameId;
+    char p1Type = random.nextBoolean() ? 'X' : 'O';
+    send("startgame", post(base + "/startgame", "type=" + p1Type));
+    send("joingame", HttpRequest.newBuilder(URI.create(base + "/joingame"))
+        .timeout(TIMEOUT).GET().build());
+    nextBoard(boards);
+
+    List<Integer> cells = new ArrayList<>(9);
+    for (int cell = 0; cell < 9; cell++) {
+      cells.add(cell);
+    }
+    Collections.shuffle(cells, random);
+
+    int playerId = 1;
+    for (int cell : cells) {
+      long start = System.nanoTime();
+      send("move", post(base + "/move/" + playerId, "x=" + cell / 3 + "&y=" + cell % 3));
+      GameBoard gameBoard = gson.fromJson(nextBoard(boards), GameBoard.class);
+      record("broadcast", start);
+      if (gameBoard.getWinner() != 0 || gameBoard.isDraw()) {
+        return;
+      }
+      playerId = playerId == 1 ? 2 : 1;
+    }
+  }
+
+  private static HttpRequest post(String uri, String form) {
+    return HttpRequest.newBuilder(URI.create(uri))
+        .timeout(TIMEOUT)
+        .header("Content-Type", "application/x-www-form-urlencoded")
+        .POST(HttpRequest.BodyPublishers.ofString(form))
+        .build();
+  }
+
+  // Sends a request and records its latency
+  private void send(String endpoint, HttpRequest request) throws Exception {
+    long start = System.nanoTime();
+    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    record(endpoint, start);
+    if (response.statusCode() != 200) {
+      throw new IllegalStateException(endpoint + " returned " + response.statusCode());
+    }
+  }
+
+  private static String nextBoard(BlockingQueue<String> boards) throws Exception {
+    String board = boards.poll(TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+    if (board == null) {
+      throw new IllegalStateException("No board received");
+    }
+    return board;
+  }
+
+  // Records the time since start, unless the run is still warming up
+  private void record(String endpoint, long start) {
+    long now = System.nanoTime();
+    if (now >= warmupEnd && now < end) {
+      histograms.get(endpoint).record(TimeUnit.NANOSECONDS.toMicros(now - start));
+    }
+  }
+
+  /**
+   * Prints the throughput and latency percentiles of every end point.
+   * @param durationSeconds seconds during which latencies were recorded
+   */
+  public void report(int durationSeconds) {
+    System.out.printf("%d matches, %d games, %d errors in %d s%n", matches, games.sum(),
+        errors.sum(), durationSeconds);
+    System.out.printf("%-10s %10s %10s %10s %10s %10s %10s%n", "endpoint", "count", "req/s",
+        "p50 us", "p99 us", "p999 us", "max us");
+    for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+      LatencyHistogram histogram = entry.getValue();
+      System.out.printf("%-10s %10d %10.1f %10d %10d %10d %10d%n", entry.getKey(),
+          histogram.getCount(), (double) histogram.getCount() / durationSeconds,
+          histogram.percentile(0.5), histogram.percentile(0.99), 
+          histogram.percentile(0.999), histogram.getMax());
+    }
+  }
+}
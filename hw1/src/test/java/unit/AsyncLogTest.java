@@ -0,0 +1,45 @@
+package unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import utils.AsyncLog;
+
+public class AsyncLogTest {
+
+  /**
+   * Debug is off by default, and logged messages are written by the background thread.
+   */
+  @Test
+  public void testLevelsAndFlush() {
+    AsyncLog log = AsyncLog.getLog(AsyncLogTest.class);
+    assertFalse(log.isDebugEnabled());
+
+    log.debug("Not logged {}", 1);
+    log.info("Logged {} {}", "by", "test");
+    assertTrue(AsyncLog.flush(5, TimeUnit.SECONDS));
+    assertEquals(0, AsyncLog.getDropped());
+  }
+
+  // Testing the private sample method of the sampler using reflection.
+  @Test
+  public void testSampler() throws NoSuchMethodException, SecurityException, 
+      IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+    AsyncLog.Sampler sampler = new AsyncLog.Sampler(AsyncLog.getLog(AsyncLogTest.class), 
+        10, TimeUnit.SECONDS);
+    Method method = AsyncLog.Sampler.class.getDeclaredMethod("sample", long.class);
+    method.setAccessible(true);
+
+    long now = System.nanoTime();
+    assertEquals(0L, method.invoke(sampler, now));
+    assertEquals(-1L, method.invoke(sampler, now + TimeUnit.SECONDS.toNanos(1)));
+    assertEquals(-1L, method.invoke(sampler, now + TimeUnit.SECONDS.toNanos(9)));
+    assertEquals(2L, method.invoke(sampler, now + TimeUnit.SECONDS.toNanos(10)));
+    assertEquals(-1L, method.invoke(sampler, now + TimeUnit.SECONDS.toNanos(11)));
+  }
+}
@@ -0,0 +1,131 @@
+package unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import models.BitBoard;
+import org.junit.jupiter.api.Test;
+
+public class BitBoardTest {
+
+  @Test
+  public void testBitBoardConstructor() {
+    BitBoard bits = new BitBoard();
+    
+    assertEquals(bits.getMarks('X'), 0);
+    assertEquals(bits.getMarks('O'), 0);
+    assertEquals(bits.isOpen(1, 1), true);
+    assertEquals(bits.isFull(), false);
+  }
+  
+  @Test
+  public void testPlace() {
+    BitBoard bits = new BitBoard();
+    bits.place('X', 1, 2);
+    bits.place('O', 2, 0);
+    
+    assertEquals(bits.getMarks('X'), BitBoard.cell(1, 2));
+    assertEquals(bits.getMarks('O'), BitBoard.cell(2, 0));
+    assertEquals(bits.isOpen(1, 2), false);
+    assertEquals(bits.isOpen(2, 0), false);
+    assertEquals(bits.isOpen(0, 0), true);
+  }
+  
+  @Test
+  public void testFromBoardState() {
+    char[][] boardState = {{'X', '\u0000', 'O'}, {'\u0000', 'X', '\u0000'}, {'O', '\u0000', 'X'}};
+    BitBoard bits = BitBoard.fromBoardState(boardState);
+    
+    assertEquals(bits.getMarks('X'), BitBoard.cell(0, 0) | BitBoard.cell(1, 1) 
+        | BitBoard.cell(2, 2));
+    assertEquals(bits.getMarks('O'), BitBoard.cell(0, 2) | BitBoard.cell(2, 0));
+    assertEquals(bits.hasWon('X'), true);
+    assertEquals(bits.hasWon('O'), false);
+  }
+  
+  @Test
+  public void testHasWonRow() {
+    BitBoard bits = new BitBoard();
+    bits.place('O', 2, 0);
+    bits.place('O', 2, 1);
+    assertEquals(bits.hasWon('O'), false);
+    
+    bits.place('O', 2, 2);
+    assertEquals(bits.hasWon('O'), true);
+  }
+  
+  @Test
+  public void testHasWonColumn() {
+    BitBoard bits = new BitBoard();
+    bits.place('X', 0, 1);
+    bits.place('X', 1, 1);
+    bits.place('X', 2, 1);
+    
+    assertEquals(bits.hasWon('X'), true);
+  }
+  
+  @Test
+  public void testHasWonRightDiagonal() {
+    BitBoard bits = new BitBoard();
+    bits.place('X', 0, 2);
+    bits.place('X', 1, 1);
+    bits.place('X', 2, 0);
+    
+    assertEquals(bits.hasWon('X'), true);
+  }
+  
+  @Test
+  public void testIsFull() {
+    char[][] drawState = {{'X', 'O', 'X'}, {'O', 'O', 'X'}, {'O', 'X', 'X'}};
+    BitBoard bits = BitBoard.fromBoardState(drawState);
+    
+    assertEquals(bits.isFull(), true);
+  }
+  
+  @Test
+  public void testLargeBoard() {
+    BitBoard bits = new BitBoard(15);
+    bits.place('X', 14, 14);
+    bits.place('O', 4, 5);
+    
+    assertEquals(bits.getSize(), 15);
+    assertEquals(bits.isMarked('X', 14, 14), true);
+    assertEquals(bits.isMarked('O', 14, 14), false);
+    assertEquals(bits.isOpen(14, 14), false);
+    assertEquals(bits.isOpen(4, 5), false);
+    assertEquals(bits.isOpen(5, 4), true);
+    assertEquals(bits.count(), 2);
+    assertEquals(bits.isFull(), false);
+  }
+  
+  @Test
+  public void testHasLineOnlyThroughMark() {
+    BitBoard bits = new BitBoard(15);
+    for (int y = 3; y < 8; y++) {
+      bits.place('X', 10, y);
+    }
+    
+    assertEquals(bits.hasLine('X', 10, 5, 5), true);
+    assertEquals(bits.hasLine('X', 10, 7, 6), false);
+    assertEquals(bits.hasWon('X', 5), true);
+    assertEquals(bits.hasWon('O', 5), false);
+  }
+  
+  @Test
+  public void testHasLineDiagonals() {
+    BitBoard bits = new BitBoard(15);
+    for (int i = 0; i < 4; i++) {
+      bits.place('O', 10 + i, 14 - i);
+      bits.place('X', i, i);
+    }
+    assertEquals(bits.hasLine('O', 12, 12, 4), true);
+    assertEquals(bits.hasLine('O', 11, 13, 5), false);
+    assertEquals(bits.hasLine('X', 3, 3, 4), true);
+    
+    // Marks at the edge of the board do not wrap around to the next row
+    BitBoard wrap = new BitBoard(15);
+    wrap.place('X', 0, 13);
+    wrap.place('X', 0, 14);
+    wrap.place('X', 1, 0);
+    assertEquals(wrap.hasLine('X', 0, 14, 3), false);
+  }
+}
@@ -0,0 +1,63 @@
+package unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.gson.Gson;
+import java.nio.charset.StandardCharsets;
+import models.GameBoard;
+import models.Player;
+import org.junit.jupiter.api.Test;
+import utils.BoardJsonWriter;
+
+public class BoardJsonWriterTest {
+
+  private static String written(GameBoard gameBoard) {
+    return new String(new BoardJsonWriter().write(gameBoard).toByteArray(), 
+        StandardCharsets.UTF_8);
+  }
+  
+  @Test
+  public void testNewGameBoard() {
+    GameBoard gameBoard = new GameBoard('X');
+    
+    assertEquals(written(gameBoard), new Gson().toJson(gameBoard));
+  }
+  
+  @Test
+  public void testGameBoardWithoutPlayers() {
+    GameBoard gameBoard = new GameBoard(null, null, false, -1, new char[3][3], 0, false);
+    
+    assertEquals(written(gameBoard), new Gson().toJson(gameBoard));
+  }
+  
+  @Test
+  public void testFinishedGameBoard() {
+    char[][] drawState = {{'X', 'O', 'X'}, {'O', 'O', 'X'}, {'O', 'X', 'X'}};
+    GameBoard gameBoard = new GameBoard(new Player('X', 1), new Player('O', 2), 
+        false, 2, drawState, Integer.MIN_VALUE, true);
+    
+    assertEquals(written(gameBoard), new Gson().toJson(gameBoard));
+  }
+  
+  @Test
+  public void testEscapedCharacters() {
+    char[][] boardState = {{'"', '\\', '<'}, {'\n', '=', '\u00e9'}, {'\u2028', '\u20ac', '\''}};
+    GameBoard gameBoard = new GameBoard(new Player('&', 1), null, 
+        true, 1, boardState, 0, false);
+    
+    assertEquals(written(gameBoard), new Gson().toJson(gameBoard));
+  }
+  
+  @Test
+  public void testWriterIsReused() {
+    BoardJsonWriter writer = BoardJsonWriter.forThread();
+    GameBoard large = new GameBoard('X', 15, 5);
+    GameBoard gameBoard = new GameBoard('O');
+    
+    assertEquals(BoardJsonWriter.forThread(), writer);
+    assertEquals(new String(writer.write(large).toByteArray(), StandardCharsets.UTF_8), 
+        new Gson().toJson(large));
+    assertEquals(new String(writer.write(gameBoard).toByteArray(), StandardCharsets.UTF_8), 
+        new Gson().toJson(gameBoard));
+  }
+}
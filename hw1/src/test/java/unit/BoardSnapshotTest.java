@@ -0,0 +1,94 @@
+package unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.gson.Gson;
+import models.BoardSnapshot;
+import models.GameBoard;
+import org.junit.jupiter.api.Test;
+
+public class BoardSnapshotTest {
+
+  @Test
+  public void testSnapshotPerVersion() {
+    GameBoard gameBoard = new GameBoard('X');
+    BoardSnapshot snapshot = gameBoard.snapshot();
+    
+    assertSame(gameBoard.snapshot(), snapshot);
+    gameBoard.joinGame();
+    assertNotSame(gameBoard.snapshot(), snapshot);
+    assertEquals(gameBoard.snapshot().getVersion(), gameBoard.getVersion());
+  }
+  
+  @Test
+  public void testSnapshotDoesNotChange() {
+    GameBoard gameBoard = new GameBoard('X');
+    gameBoard.joinGame();
+    BoardSnapshot snapshot = gameBoard.snapshot();
+    String json = snapshot.toJson();
+    
+    gameBoard.move(1, 0, 0);
+    assertEquals(snapshot.getMark(0, 0), '\u0000');
+    assertEquals(snapshot.getTurn(), 1);
+    assertEquals(snapshot.toJson(), json);
+    assertEquals(gameBoard.snapshot().getMark(0, 0), 'X');
+    assertEquals(gameBoard.snapshot().getTurn(), 2);
+  }
+  
+  @Test
+  public void testPlayers() {
+    GameBoard gameBoard = new GameBoard(null, null, false, -1, new char[3][3], 0, false);
+    assertFalse(gameBoard.snapshot().hasP1());
+    
+    gameBoard = new GameBoard('O');
+    assertTrue(gameBoard.snapshot().hasP1());
+    assertFalse(gameBoard.snapshot().hasP2());
+    gameBoard.joinGame();
+    assertTrue(gameBoard.snapshot().hasP2());
+  }
+  
+  @Test
+  public void testJsonMatchesGson() {
+    GameBoard gameBoard = new GameBoard('X');
+    gameBoard.joinGame();
+    gameBoard.move(1, 1, 2);
+    
+    assertEquals(gameBoard.snapshot().toJson(), new Gson().toJson(gameBoard));
+  }
+  
+  @Test
+  public void testToGameBoard() {
+    GameBoard gameBoard = new GameBoard('X');
+    gameBoard.joinGame();
+    gameBoard.move(1, 2, 1);
+    
+    GameBoard copy = gameBoard.snapshot().toGameBoard();
+    assertNotSame(copy, gameBoard);
+    assertEquals(new Gson().toJson(copy), new Gson().toJson(gameBoard));
+    assertFalse(copy.isComputerP2());
+    
+    GameBoard computer = new GameBoard('X');
+    computer.joinGame(true);
+    assertTrue(computer.snapshot().isComputerP2());
+    assertTrue(computer.snapshot().toGameBoard().isComputerP2());
+  }
+  
+  @Test
+  public void testLargeBoard() {
+    GameBoard gameBoard = new GameBoard('X', 7, 4);
+    gameBoard.joinGame();
+    gameBoard.move(1, 6, 5);
+    BoardSnapshot snapshot = gameBoard.snapshot();
+    
+    assertEquals(snapshot.getSize(), 7);
+    assertEquals(snapshot.getWinLength(), 4);
+    assertEquals(snapshot.getMark(6, 5), 'X');
+    GameBoard copy = snapshot.toGameBoard();
+    assertEquals(copy.getWinLength(), 4);
+    assertEquals(new Gson().toJson(copy), new Gson().toJson(gameBoard));
+  }
+}
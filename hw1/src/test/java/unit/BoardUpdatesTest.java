@@ -0,0 +1,32 @@
+package unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import controllers.BoardUpdates;
+import models.GameBoard;
+import org.junit.jupiter.api.Test;
+
+public class BoardUpdatesTest {
+
+  @Test
+  public void testDeltaJson() {
+    GameBoard gameBoard = new GameBoard('O');
+    gameBoard.joinGame();
+    long base = gameBoard.getVersion();
+    gameBoard.move(1, 2, 1);
+    
+    assertEquals(BoardUpdates.deltaJson(base, gameBoard.snapshot(), 2, 1), 
+        "{\"type\":\"delta\",\"base\":" + base + ",\"version\":" + gameBoard.getVersion()
+        + ",\"x\":2,\"y\":1,\"mark\":\"O\",\"turn\":2,\"winner\":0,\"isDraw\":false,"
+        + "\"gameStarted\":true}");
+  }
+  
+  @Test
+  public void testSnapshotJson() {
+    GameBoard gameBoard = new GameBoard('X');
+    
+    assertEquals(BoardUpdates.snapshotJson(gameBoard.snapshot()), 
+        "{\"type\":\"snapshot\",\"version\":" + gameBoard.getVersion() + ",\"board\":" 
+        + gameBoard.toJson() + "}");
+  }
+}
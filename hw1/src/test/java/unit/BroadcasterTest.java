@@ -0,0 +1,119 @@
+package unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import controllers.Broadcaster;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.junit.jupiter.api.Test;
+
+public class BroadcasterTest {
+
+  /**
+   * Session stub that records the messages sent to it and the callbacks of the writes.
+   */
+  private static class FakeSession {
+    boolean open = true;
+    boolean closed = false;
+    final List<String> messages = new ArrayList<>();
+    final List<WriteCallback> callbacks = new ArrayList<>();
+    
+    final RemoteEndpoint remote = (RemoteEndpoint) Proxy.newProxyInstance(
+        RemoteEndpoint.class.getClassLoader(), new Class<?>[] {RemoteEndpoint.class},
+        (proxy, method, args) -> {
+          if (method.getName().equals("sendString") && args.length == 2) {
+            messages.add((String) args[0]);
+            callbacks.add((WriteCallback) args[1]);
+          }
+          return null;
+        });
+    
+    final Session session = (Session) Proxy.newProxyInstance(
+        Session.class.getClassLoader(), new Class<?>[] {Session.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "isOpen":
+              return open;
+            case "getRemote":
+              return remote;
+            case "close":
+              closed = true;
+              open = false;
+              return null;
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "equals":
+              return proxy == args[0];
+            default:
+              return null;
+          }
+        });
+  }
+  
+  @Test
+  public void testBroadcastSendsToAllSessions() {
+    FakeSession session1 = new FakeSession();
+    FakeSession session2 = new FakeSession();
+    Broadcaster broadcaster = new Broadcaster(4);
+    
+    broadcaster.broadcast(Arrays.asList(session1.session, session2.session), "board");
+    
+    assertEquals(session1.messages, Arrays.asList("board"));
+    assertEquals(session2.messages, Arrays.asList("board"));
+  }
+  
+  @Test
+  public void testBacklogReleasedOnCompletion() {
+    FakeSession fake = new FakeSession();
+    Broadcaster broadcaster = new Broadcaster(4);
+    
+    broadcaster.send(fake.session, "board");
+    assertEquals(broadcaster.getBacklog(fake.session), 1);
+    
+    fake.callbacks.get(0).writeSuccess();
+    
+    assertEquals(broadcaster.getBacklog(fake.session), 0);
+    assertEquals(broadcaster.getSent(), 1);
+  }
+  
+  @Test
+  public void testFailedWriteReleasesBacklog() {
+    FakeSession fake = new FakeSession();
+    Broadcaster broadcaster = new Broadcaster(4);
+    
+    broadcaster.send(fake.session, "board");
+    fake.callbacks.get(0).writeFailed(new Exception("Broken pipe"));
+    
+    assertEquals(broadcaster.getBacklog(fake.session), 0);
+    assertEquals(broadcaster.getFailed(), 1);
+  }
+  
+  @Test
+  public void testSlowSessionDisconnected() {
+    FakeSession fake = new FakeSession();
+    Broadcaster broadcaster = new Broadcaster(2);
+    
+    assertEquals(broadcaster.send(fake.session, "1"), true);
+    assertEquals(broadcaster.send(fake.session, "2"), true);
+    assertEquals(broadcaster.send(fake.session, "3"), false);
+    
+    assertEquals(fake.closed, true);
+    assertEquals(fake.messages, Arrays.asList("1", "2"));
+    assertEquals(broadcaster.getDropped(), 1);
+  }
+  
+  @Test
+  public void testClosedSessionSkipped() {
+    FakeSession fake = new FakeSession();
+    fake.open = false;
+    Broadcaster broadcaster = new Broadcaster(2);
+    
+    assertEquals(broadcaster.send(fake.session, "board"), false);
+    assertEquals(fake.messages.size(), 0);
+  }
+}
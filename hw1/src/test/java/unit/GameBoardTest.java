@@ -2,6 +2,8 @@ package unit;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -402,6 +404,20 @@ public class GameBoardTest {
     assertEquals(msg.getMessage(), "Game over!");
   }
   
+  @Test
+  public void testMoveReturnsSharedMessages() {
+    char p1Type = 'X';
+    GameBoard gameBoard = new GameBoard(p1Type);
+    
+    assertSame(gameBoard.move(1, 0, 0), Message.NOT_STARTED);
+    gameBoard.joinGame();
+    assertSame(gameBoard.move(1, 0, 0), Message.VALID);
+    assertSame(gameBoard.move(1, 0, 1), Message.NOT_YOUR_TURN);
+    assertSame(gameBoard.move(2, 0, 0), Message.SLOT_TAKEN);
+    assertSame(gameBoard.move(2, 3, 0), Message.INVALID_MOVE);
+    assertSame(gameBoard.move(3, 0, 1), Message.INVALID_PLAYER);
+  }
+  
   @Test
   public void testToJson() {
     char p1Type = 'X';
@@ -414,6 +430,23 @@ public class GameBoardTest {
   }
   
   
+  @Test
+  public void testToJsonCachedPerVersion() {
+    char p1Type = 'X';
+    GameBoard gameBoard = new GameBoard(p1Type);
+    gameBoard.joinGame();
+    String json = gameBoard.toJson();
+    long version = gameBoard.getVersion();
+    
+    assertSame(gameBoard.toJson(), json);
+    
+    gameBoard.move(1, 0, 0);
+    
+    assertEquals(gameBoard.getVersion() > version, true);
+    assertEquals(gameBoard.toJson().equals(json), false);
+  }
+  
+  
   // Testing private methods using reflection
   
   @Test
@@ -445,10 +478,10 @@ public class GameBoardTest {
     gameBoard.joinGame();
     gameBoard.move(1, 0, 0);
     
-    Method method = GameBoard.class.getDeclaredMethod("isOpenSlot", Move.class);
+    Method method = GameBoard.class.getDeclaredMethod("isOpenSlot", int.class, int.class);
     method.setAccessible(true);
     
-    boolean isOpen = (boolean) method.invoke(gameBoard, new Move(gameBoard.getP2(), 0, 0));
+    boolean isOpen = (boolean) method.invoke(gameBoard, 0, 0);
     assertEquals(isOpen, false);
   }
   
@@ -468,10 +501,11 @@ public class GameBoardTest {
     gameBoard.move(2, 1, 1);
     gameBoard.move(1, 2, 0);
     
-    Method method = GameBoard.class.getDeclaredMethod("checkWinner", Player.class);
+    Method method = GameBoard.class.getDeclaredMethod("checkWinner", Player.class, int.class,
+        int.class);
     method.setAccessible(true);
     
-    boolean isWin = (boolean) method.invoke(gameBoard, gameBoard.getP1());
+    boolean isWin = (boolean) method.invoke(gameBoard, gameBoard.getP1(), 2, 0);
     assertEquals(isWin, true);
   }
   
@@ -490,10 +524,11 @@ public class GameBoardTest {
     gameBoard.move(2, 0, 2);
     gameBoard.move(1, 0, 1);
     
-    Method method = GameBoard.class.getDeclaredMethod("checkWinner", Player.class);
+    Method method = GameBoard.class.getDeclaredMethod("checkWinner", Player.class, int.class,
+        int.class);
     method.setAccessible(true);
     
-    boolean isWin = (boolean) method.invoke(gameBoard, gameBoard.getP1());
+    boolean isWin = (boolean) method.invoke(gameBoard, gameBoard.getP1(), 0, 1);
     assertEquals(isWin, false);
   }
   
@@ -513,10 +548,11 @@ public class GameBoardTest {
     gameBoard.move(2, 1, 1);
     gameBoard.move(1, 0, 2);
     
-    Method method = GameBoard.class.getDeclaredMethod("checkWinner", Player.class);
+    Method method = GameBoard.class.getDeclaredMethod("checkWinner", Player.class, int.class,
+        int.class);
     method.setAccessible(true);
     
-    boolean isWin = (boolean) method.invoke(gameBoard, gameBoard.getP1());
+    boolean isWin = (boolean) method.invoke(gameBoard, gameBoard.getP1(), 0, 2);
     assertEquals(isWin, true);
   }
   
@@ -535,10 +571,11 @@ public class GameBoardTest {
     gameBoard.move(2, 1, 0);
     gameBoard.move(1, 2, 0);
     
-    Method method = GameBoard.class.getDeclaredMethod("checkWinner", Player.class);
+    Method method = GameBoard.class.getDeclaredMethod("checkWinner", Player.class, int.class,
+        int.class);
     method.setAccessible(true);
     
-    boolean isWin = (boolean) method.invoke(gameBoard, gameBoard.getP1());
+    boolean isWin = (boolean) method.invoke(gameBoard, gameBoard.getP1(), 2, 0);
     assertEquals(isWin, false);
   }
   
@@ -558,10 +595,11 @@ public class GameBoardTest {
     gameBoard.move(2, 1, 2);
     gameBoard.move(1, 2, 2);
     
-    Method method = GameBoard.class.getDeclaredMethod("checkWinner", Player.class);
+    Method method = GameBoard.class.getDeclaredMethod("checkWinner", Player.class, int.class,
+        int.class);
     method.setAccessible(true);
     
-    boolean isWin = (boolean) method.invoke(gameBoard, gameBoard.getP1());
+    boolean isWin = (boolean) method.invoke(gameBoard, gameBoard.getP1(), 2, 2);
     assertEquals(isWin, true);
   }
   
@@ -583,10 +621,11 @@ public class GameBoardTest {
     gameBoard.move(1, 1, 2);
     gameBoard.move(2, 2, 2);
     
-    Method method = GameBoard.class.getDeclaredMethod("checkWinner", Player.class);
+    Method method = GameBoard.class.getDeclaredMethod("checkWinner", Player.class, int.class,
+        int.class);
     method.setAccessible(true);
     
-    boolean isWin = (boolean) method.invoke(gameBoard, gameBoard.getP1());
+    boolean isWin = (boolean) method.invoke(gameBoard, gameBoard.getP1(), 1, 2);
     assertEquals(isWin, false);
   }
   
@@ -606,10 +645,11 @@ public class GameBoardTest {
     gameBoard.move(2, 1, 2);
     gameBoard.move(1, 2, 0);
     
-    Method method = GameBoard.class.getDeclaredMethod("checkWinner", Player.class);
+    Method method = GameBoard.class.getDeclaredMethod("checkWinner", Player.class, int.class,
+        int.class);
     method.setAccessible(true);
     
-    boolean isWin = (boolean) method.invoke(gameBoard, gameBoard.getP1());
+    boolean isWin = (boolean) method.invoke(gameBoard, gameBoard.getP1(), 2, 0);
     assertEquals(isWin, true);
   }
   
@@ -631,10 +671,11 @@ public class GameBoardTest {
     gameBoard.move(1, 0, 2);
     gameBoard.move(2, 1, 2);
     
-    Method method = GameBoard.class.getDeclaredMethod("checkWinner", Player.class);
+    Method method = GameBoard.class.getDeclaredMethod("checkWinner", Player.class, int.class,
+        int.class);
     method.setAccessible(true);
     
-    boolean isWin = (boolean) method.invoke(gameBoard, gameBoard.getP1());
+    boolean isWin = (boolean) method.invoke(gameBoard, gameBoard.getP1(), 0, 2);
     assertEquals(isWin, false);
   }
   
@@ -649,10 +690,11 @@ public class GameBoardTest {
     GameBoard gameBoard = new GameBoard(p1Type);
     gameBoard.joinGame();
     
-    Method method = GameBoard.class.getDeclaredMethod("checkWinner", Player.class);
+    Method method = GameBoard.class.getDeclaredMethod("checkWinner", Player.class, int.class,
+        int.class);
     method.setAccessible(true);
     
-    boolean isWin = (boolean) method.invoke(gameBoard, gameBoard.getP1());
+    boolean isWin = (boolean) method.invoke(gameBoard, gameBoard.getP1(), 0, 0);
     assertEquals(isWin, false);
   }
   
@@ -683,4 +725,61 @@ public class GameBoardTest {
     assertEquals(isDraw, true);
   }
   
+  @Test
+  public void testComputerMove() {
+    GameBoard gameBoard = new GameBoard('O');
+    gameBoard.joinGame();
+    gameBoard.move(1, 0, 0);
+    assertEquals(gameBoard.isComputerP2(), false);
+    assertEquals(gameBoard.computerMove(), null);
+    
+    gameBoard = new GameBoard('O');
+    gameBoard.joinGame(true);
+    assertEquals(gameBoard.isComputerP2(), true);
+    assertEquals(gameBoard.computerMove(), null);
+    
+    // The only answer to a corner that does not lose is the center
+    gameBoard.move(1, 0, 0);
+    Move move = gameBoard.computerMove();
+    assertEquals(move.getPlayer().getType(), 'X');
+    assertEquals(move.getMoveX(), 1);
+    assertEquals(move.getMoveY(), 1);
+    assertEquals(gameBoard.move(2, 1, 1).isMoveValidity(), true);
+  }
+  
+  @Test
+  public void testLargeBoard() {
+    GameBoard gameBoard = new GameBoard('X', 15, 5);
+    gameBoard.joinGame();
+    assertEquals(gameBoard.getSize(), 15);
+    assertEquals(gameBoard.getWinLength(), 5);
+    assertEquals(gameBoard.getBoardState().length, 15);
+    assertEquals(gameBoard.isClassic(), false);
+    assertSame(gameBoard.move(1, 15, 0), Message.INVALID_MOVE);
+    
+    // Player 1 builds a diagonal of 5, player 2 plays far away
+    for (int i = 0; i < 4; i++) {
+      assertEquals(gameBoard.move(1, 5 + i, 5 + i).isMoveValidity(), true);
+      assertEquals(gameBoard.move(2, 14, i).isMoveValidity(), true);
+    }
+    assertEquals(gameBoard.getWinner(), 0);
+    assertEquals(gameBoard.move(1, 9, 9).isMoveValidity(), true);
+    assertEquals(gameBoard.getWinner(), 1);
+    assertEquals(gameBoard.isGameStarted(), false);
+    
+    GameBoard copy = gameBoard.copy();
+    assertEquals(copy.getSize(), 15);
+    assertEquals(copy.getWinLength(), 5);
+  }
+  
+  @Test
+  public void testIsValidSize() {
+    assertEquals(GameBoard.isValidSize(3, 3), true);
+    assertEquals(GameBoard.isValidSize(15, 5), true);
+    assertEquals(GameBoard.isValidSize(2, 2), false);
+    assertEquals(GameBoard.isValidSize(4, 5), false);
+    assertEquals(GameBoard.isValidSize(33, 5), false);
+    assertThrows(IllegalArgumentException.class, () -> new GameBoard('X', 4, 5));
+  }
+  
 }
@@ -0,0 +1,192 @@
+package unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import controllers.GameRegistry;
+import io.javalin.http.ServiceUnavailableResponse;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import models.BoardSnapshot;
+import models.GameBoard;
+import models.Message;
+import org.junit.jupiter.api.Test;
+
+public class GameRegistryTest {
+
+  @Test
+  public void testPutAndGet() {
+    GameRegistry registry = new GameRegistry();
+    GameBoard gameBoard = new GameBoard('X');
+    registry.put("a", gameBoard);
+    
+    assertSame(registry.get("a"), gameBoard);
+    assertNull(registry.get("b"));
+    assertEquals(registry.size(), 1);
+  }
+  
+  @Test
+  public void testRemove() {
+    GameRegistry registry = new GameRegistry();
+    GameBoard gameBoard = new GameBoard('X');
+    registry.put("a", gameBoard);
+    
+    assertSame(registry.remove("a"), gameBoard);
+    assertNull(registry.get("a"));
+    assertEquals(registry.size(), 0);
+  }
+  
+  @Test
+  public void testMailboxIsStable() {
+    GameRegistry registry = new GameRegistry();
+    
+    assertSame(registry.mailboxOf("a"), registry.mailboxOf("a"));
+  }
+  
+  /**
+   * Moves sent to a game from many threads at once are applied one at a time, so exactly
+   * one of two players racing for the same cell gets it.
+   * @throws Exception if a thread fails
+   */
+  @Test
+  public void testCallSerializesMoves() throws Exception {
+    GameRegistry registry = new GameRegistry(Executors.newFixedThreadPool(4));
+    GameBoard gameBoard = new GameBoard('X');
+    gameBoard.joinGame();
+    registry.put("a", gameBoard);
+    
+    ExecutorService players = Executors.newFixedThreadPool(8);
+    List<Future<Message>> responses = new ArrayList<>();
+    for (int i = 0; i < 64; i++) {
+      responses.add(players.submit(() -> registry.call("a", () -> gameBoard.move(1, 0, 0))));
+    }
+    int valid = 0;
+    for (Future<Message> response : responses) {
+      if (response.get().isMoveValidity()) {
+        valid++;
+      }
+    }
+    players.shutdown();
+    
+    assertEquals(valid, 1);
+    assertEquals(gameBoard.getTurn(), 2);
+  }
+  
+  @Test
+  public void testCallRethrowsSqlException() {
+    GameRegistry registry = new GameRegistry();
+    
+    assertThrows(SQLException.class, () -> registry.call("a", () -> {
+      throw new SQLException("Broken write");
+    }));
+    assertThrows(IllegalStateException.class, () -> registry.call("a", () -> {
+      throw new IllegalStateException("Broken task");
+    }));
+  }
+  
+  /**
+   * A call that waits longer than its timeout gives up with 503, and the mailbox carries on
+   * once the slow task finishes.
+   * @throws Exception if the mailbox fails
+   */
+  @Test
+  public void testCallTimesOut() throws Exception {
+    GameRegistry registry = new GameRegistry(Executors.newFixedThreadPool(1), 50);
+    CompletableFuture<Void> release = new CompletableFuture<>();
+    
+    ServiceUnavailableResponse busy = assertThrows(ServiceUnavailableResponse.class,
+        () -> registry.call("a", () -> release.completeOnTimeout(null, 1, TimeUnit.SECONDS)
+            .join()));
+    assertEquals(busy.getStatus(), 503);
+    release.complete(null);
+    assertEquals(registry.call("a", () -> "done"), "done");
+  }
+  
+  @Test
+  public void testGameIds() {
+    GameRegistry registry = new GameRegistry();
+    registry.put("a", new GameBoard('X'));
+    registry.put("b", new GameBoard('O'));
+    
+    assertEquals(registry.gameIds().size(), 2);
+  }
+  
+  @Test
+  public void testPublishSnapshot() {
+    GameRegistry registry = new GameRegistry();
+    GameBoard gameBoard = new GameBoard('X');
+    registry.put("a", gameBoard);
+    BoardSnapshot before = registry.snapshot("a");
+    
+    gameBoard.joinGame();
+    assertSame(registry.snapshot("a"), before);
+    
+    BoardSnapshot after = registry.publish("a", gameBoard);
+    assertNotSame(after, before);
+    assertSame(registry.snapshot("a"), after);
+    assertEquals(after.getVersion(), gameBoard.getVersion());
+    
+    registry.remove("a");
+    assertNull(registry.snapshot("a"));
+  }
+  
+  @Test
+  public void testAwaitVersion() throws Exception {
+    GameRegistry registry = new GameRegistry();
+    GameBoard gameBoard = new GameBoard('X');
+    registry.put("a", gameBoard);
+    long version = gameBoard.getVersion();
+    
+    assertTrue(registry.awaitVersion("a", version - 1).isDone());
+    CompletableFuture<BoardSnapshot> next = registry.awaitVersion("a", version);
+    assertFalse(next.isDone());
+    
+    gameBoard.joinGame();
+    BoardSnapshot published = registry.publish("a", gameBoard);
+    assertSame(next.get(1, TimeUnit.SECONDS), published);
+  }
+  
+  /**
+   * An unknown game has nothing to wait for, and a version from the future waits for the
+   * next change instead of for that version.
+   * @throws Exception if the future fails
+   */
+  @Test
+  public void testAwaitVersionBounded() throws Exception {
+    GameRegistry registry = new GameRegistry();
+    assertNull(registry.awaitVersion("missing", 0));
+    assertNull(registry.snapshot("missing"));
+    
+    GameBoard gameBoard = new GameBoard('X');
+    registry.put("a", gameBoard);
+    CompletableFuture<BoardSnapshot> next = registry.awaitVersion("a", 1000);
+    assertFalse(next.isDone());
+    gameBoard.joinGame();
+    BoardSnapshot published = registry.publish("a", gameBoard);
+    assertSame(next.get(1, TimeUnit.SECONDS), published);
+  }
+  
+  @Test
+  public void testReplacedGameContinuesVersion() {
+    GameRegistry registry = new GameRegistry();
+    GameBoard gameBoard = new GameBoard('X');
+    gameBoard.joinGame();
+    registry.put("a", gameBoard);
+    
+    GameBoard replacement = new GameBoard('O');
+    registry.put("a", replacement);
+    assertTrue(replacement.getVersion() > gameBoard.getVersion());
+    assertEquals(registry.snapshot("a").getVersion(), replacement.getVersion());
+  }
+}
@@ -0,0 +1,332 @@
+package unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import models.GameBoard;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import utils.GameRepository;
+import utils.InMemoryGameRepository;
+import utils.MappedGameRepository;
+import utils.SqliteDatabase;
+import utils.SqliteGameRepository;
+import utils.WriteBehindQueue;
+import utils.WriteBehindQueue.Durability;
+
+public class GameRepositoryTest {
+
+  private Path file;
+
+  @BeforeEach
+  public void createFile() throws IOException {
+    file = Files.createTempFile("tictactoe", ".games");
+  }
+
+  @AfterEach
+  public void deleteFile() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  // Returns a 3x3 game where both players have made a move
+  private static GameBoard playedGame() {
+    GameBoard gameBoard = new GameBoard('O');
+    gameBoard.joinGame();
+    gameBoard.move(1, 0, 0);
+    gameBoard.move(2, 1, 1);
+    return gameBoard;
+  }
+
+  /**
+   * Saves, loads, lists and deletes games through any backend.
+   * @param repository the backend
+   * @throws SQLException if the backend fails
+   */
+  private static void assertStoresGames(GameRepository repository) throws SQLException {
+    GameBoard played = playedGame();
+    GameBoard large = new GameBoard('X', 15, 5);
+    large.joinGame();
+    large.move(1, 14, 14);
+    GameBoard empty = new GameBoard(null, null, false, -1, new char[3][3], 0, false);
+
+    repository.replace("played", played.snapshot());
+    repository.save("large", large.snapshot());
+    repository.save("empty", empty.snapshot());
+    assertTrue(repository.list().containsAll(Set.of("played", "large", "empty")));
+    assertEquals(repository.load("played").toJson(), played.toJson());
+    assertEquals(repository.load("large").toJson(), large.toJson());
+    assertEquals(repository.load("large").getWinLength(), 5);
+    assertEquals(repository.load("empty").toJson(), empty.toJson());
+
+    played.move(1, 0, 1);
+    repository.saveMove("played", played.snapshot(), 1, 0, 1);
+    assertEquals(repository.load("played").toJson(), played.toJson());
+
+    repository.delete("large");
+    assertNull(repository.load("large"));
+    assertNull(repository.load("missing"));
+    assertTrue(repository.list().containsAll(Set.of("played", "empty")));
+    assertFalse(repository.list().contains("large"));
+  }
+
+  /**
+   * A game against the computer is loaded with the computer as player 2, so it answers the
+   * next move.
+   * @param repository the backend
+   * @param gameId a game the backend stores
+   * @throws SQLException if the backend fails
+   */
+  private static void assertKeepsComputer(GameRepository repository, String gameId)
+      throws SQLException {
+    GameBoard computer = new GameBoard('X');
+    computer.joinGame(true);
+    repository.replace(gameId, computer.snapshot());
+    GameBoard loaded = repository.load(gameId);
+    assertTrue(loaded.isComputerP2());
+    loaded.move(1, 0, 0);
+    assertEquals(loaded.computerMove().getMoveX(), 1);
+    
+    GameBoard person = playedGame();
+    repository.save(gameId, person.snapshot());
+    assertFalse(repository.load(gameId).isComputerP2());
+    repository.delete(gameId);
+  }
+
+  /**
+   * The in-memory backend keeps the latest snapshot of every game.
+   * @throws SQLException if the backend fails
+   */
+  @Test
+  public void testInMemory() throws SQLException {
+    GameRepository repository = new InMemoryGameRepository();
+    assertStoresGames(repository);
+    assertKeepsComputer(repository, "computer");
+    repository.close();
+  }
+
+  /**
+   * The memory-mapped backend finds every game again after it is reopened, including who
+   * plays player 2.
+   * @throws SQLException if the backend fails
+   */
+  @Test
+  public void testMappedSurvivesReopen() throws SQLException {
+    MappedGameRepository repository = new MappedGameRepository(file);
+    assertStoresGames(repository);
+    assertKeepsComputer(repository, "computer");
+    GameBoard computer = new GameBoard('X');
+    computer.joinGame(true);
+    repository.save("computer", computer.snapshot());
+    repository.close();
+
+    repository = new MappedGameRepository(file);
+    assertTrue(repository.load("computer").isComputerP2());
+    repository.delete("computer");
+    assertEquals(new HashSet<>(repository.list()), Set.of("played", "empty"));
+    GameBoard played = repository.load("played");
+    assertEquals(played.getBoardState()[0][1], 'O');
+    assertEquals(played.getP2().getType(), 'X');
+    assertEquals(played.getTurn(), 2);
+
+    // The slot of the deleted game is reused, so the file does not grow
+    repository.save("new", playedGame().snapshot());
+    assertEquals(repository.getCapacity(), 256);
+    repository.close();
+  }
+
+  /**
+   * The memory-mapped backend grows its file when every slot is taken.
+   * @throws SQLException if the backend fails
+   */
+  @Test
+  public void testMappedGrows() throws SQLException {
+    MappedGameRepository repository = new MappedGameRepository(file);
+    GameBoard gameBoard = playedGame();
+    for (int i = 0; i < 300; i++) {
+      repository.save("game" + i, gameBoard.snapshot());
+    }
+    assertEquals(repository.getCapacity(), 512);
+    repository.close();
+
+    repository = new MappedGameRepository(file);
+    assertEquals(repository.size(), 300);
+    assertEquals(repository.load("game299").toJson(), gameBoard.toJson());
+    repository.close();
+  }
+
+  /**
+   * The memory-mapped backend refuses files it did not write and IDs that do not fit.
+   * @throws IOException if the file cannot be written
+   * @throws SQLException if the backend fails
+   */
+  @Test
+  public void testMappedRejectsInvalidInput() throws IOException, SQLException {
+    MappedGameRepository repository = new MappedGameRepository(file);
+    assertTrue(repository.acceptsGameId(String.join("", Collections.nCopies(32, "g"))));
+    assertFalse(repository.acceptsGameId(String.join("", Collections.nCopies(33, "g"))));
+    assertThrows(SQLException.class,
+        () -> repository.save(String.join("", Collections.nCopies(65, "g")),
+            playedGame().snapshot()));
+    repository.close();
+
+    Files.write(file, new byte[100]);
+    assertThrows(SQLException.class, () -> new MappedGameRepository(file));
+  }
+
+  /**
+   * A store for 3x3 boards has 64-byte records and refuses larger boards.
+   * @throws IOException if the file size cannot be read
+   * @throws SQLException if the backend fails
+   */
+  @Test
+  public void testMappedCompactRecords() throws IOException, SQLException {
+    MappedGameRepository repository = new MappedGameRepository(file, 3, 0);
+    assertEquals(repository.getRecordSize(), 64);
+    assertEquals(Files.size(file), 64 + 256 * 64);
+    assertThrows(SQLException.class,
+        () -> repository.save("large", new GameBoard('X', 4, 3).snapshot()));
+    
+    GameBoard gameBoard = playedGame();
+    repository.save("first", gameBoard.snapshot());
+    repository.save("second", new GameBoard('X').snapshot());
+    repository.close();
+    
+    // The size of an existing file wins over the one asked for
+    MappedGameRepository reopened = new MappedGameRepository(file, 32, 0);
+    assertEquals(reopened.getRecordSize(), 64);
+    Map<String, GameBoard> games = reopened.loadAll();
+    assertEquals(games.keySet(), Set.of("first", "second"));
+    assertEquals(games.get("first").toJson(), gameBoard.toJson());
+    reopened.close();
+  }
+
+  /**
+   * A record torn by a crash fails its checksum and is dropped, the other games survive.
+   * @throws IOException if the file cannot be written
+   * @throws SQLException if the backend fails
+   */
+  @Test
+  public void testMappedDropsTornRecords() throws IOException, SQLException {
+    MappedGameRepository repository = new MappedGameRepository(file, 3, 0);
+    repository.save("torn", playedGame().snapshot());
+    repository.save("intact", playedGame().snapshot());
+    repository.close();
+    
+    // Half a write: the marks of the first record changed, but not its checksum
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xff}), 64 + 48);
+    }
+    
+    repository = new MappedGameRepository(file, 3, 0);
+    assertEquals(repository.getTornRecords(), 1);
+    assertEquals(repository.list(), Collections.singletonList("intact"));
+    repository.save("new", playedGame().snapshot());
+    repository.close();
+    
+    repository = new MappedGameRepository(file, 3, 0);
+    assertEquals(repository.getTornRecords(), 0);
+    assertEquals(new HashSet<>(repository.list()), Set.of("intact", "new"));
+    repository.close();
+  }
+
+  /**
+   * Changed records are forced to disk in the background.
+   * @throws InterruptedException if interrupted
+   * @throws SQLException if the backend fails
+   */
+  @Test
+  public void testMappedForcesInBackground() throws InterruptedException, SQLException {
+    MappedGameRepository repository = new MappedGameRepository(file, 3, 10);
+    long forces = repository.getForces();
+    repository.save("game", playedGame().snapshot());
+    for (int i = 0; i < 500 && repository.getForces() == forces; i++) {
+      Thread.sleep(10);
+    }
+    assertTrue(repository.getForces() > forces);
+    
+    // Nothing changed, so there is nothing to force
+    forces = repository.getForces();
+    repository.force();
+    assertEquals(repository.getForces(), forces);
+    repository.close();
+  }
+
+  /**
+   * The SQLite backend stores every game in the move log, or the default game in the
+   * single-game table and the other games in the move log.
+   * @throws SQLException if sql error
+   */
+  @Test
+  public void testSqlite() throws SQLException {
+    SqliteDatabase db = new SqliteDatabase();
+    db.cleanTable();
+    SqliteGameRepository single = new SqliteGameRepository(db,
+        new WriteBehindQueue(db, Durability.SYNC, 4), false, "default");
+    GameBoard gameBoard = playedGame();
+    single.replace("default", gameBoard.snapshot());
+    single.save("other", gameBoard.snapshot());
+    assertEquals(single.list().get(0), "default");
+    assertTrue(single.list().contains("other"));
+    assertEquals(single.load("default").toJson(), gameBoard.toJson());
+    assertEquals(single.load("other").toJson(), gameBoard.toJson());
+    assertKeepsComputer(single, "default");
+    single.delete("other");
+    single.getWrites().close();
+
+    SqliteGameRepository eventLog = new SqliteGameRepository(db,
+        new WriteBehindQueue(db, Durability.BATCHED, 16), true, "default");
+    for (String gameId : new String[] {"played", "large", "empty"}) {
+      eventLog.delete(gameId);
+    }
+    assertStoresGames(eventLog);
+    assertKeepsComputer(eventLog, "computer");
+    eventLog.delete("played");
+    eventLog.delete("empty");
+    assertFalse(eventLog.list().contains("played"));
+    db.cleanTable();
+    eventLog.close();
+  }
+
+  /**
+   * Without the move log for every game, games other than the default one are still stored
+   * and found again after the database is reopened.
+   * @throws SQLException if the backend fails
+   */
+  @Test
+  public void testSqliteKeepsOtherGames() throws SQLException {
+    SqliteDatabase db = new SqliteDatabase();
+    db.cleanTable();
+    SqliteGameRepository repository = new SqliteGameRepository(db,
+        new WriteBehindQueue(db, Durability.SYNC, 4), false, "default");
+    GameBoard gameBoard = playedGame();
+    repository.replace("second", gameBoard.snapshot());
+    gameBoard.move(1, 0, 1);
+    repository.saveMove("second", gameBoard.snapshot(), 1, 0, 1);
+    repository.close();
+
+    db = new SqliteDatabase();
+    repository = new SqliteGameRepository(db, new WriteBehindQueue(db, Durability.SYNC, 4),
+        false, "default");
+    assertTrue(repository.list().contains("second"));
+    assertEquals(repository.load("second").toJson(), gameBoard.toJson());
+    repository.delete("second");
+    assertFalse(repository.list().contains("second"));
+    db.cleanTable();
+    repository.close();
+  }
+}
@@ -0,0 +1,48 @@
+package unit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.gson.Gson;
+import models.GameBoard;
+import models.Message;
+import models.Player;
+import org.junit.jupiter.api.Test;
+import utils.Json;
+
+public class JsonTest {
+
+  @Test
+  public void testMessageMatchesReflectiveJson() {
+    Message msg = new Message(false, 200, "<Test>");
+    
+    assertEquals(Json.GSON.toJson(msg), new Gson().toJson(msg));
+    assertEquals(Json.GSON.toJson(Message.SLOT_TAKEN), 
+        new Gson().toJson(new Message(false, 200, "Please select an open slot!")));
+  }
+  
+  @Test
+  public void testReadGameBoard() {
+    char[][] winState = {{'X', 'X', 'X'}, {'O', 'O', '\u0000'}, {'\u0000', '\u0000', '\u0000'}};
+    GameBoard gameBoard = new GameBoard(new Player('X', 1), new Player('O', 2), 
+        false, 2, winState, 1, false);
+    GameBoard g2 = new Gson().fromJson(gameBoard.toJson(), GameBoard.class);
+    
+    assertEquals(gameBoard.getP1().getType(), g2.getP1().getType());
+    assertEquals(gameBoard.getP2().getId(), g2.getP2().getId());
+    assertEquals(gameBoard.isGameStarted(), g2.isGameStarted());
+    assertEquals(gameBoard.getTurn(), g2.getTurn());
+    assertArrayEquals(gameBoard.getBoardState(), g2.getBoardState());
+    assertEquals(gameBoard.getWinner(), g2.getWinner());
+    assertEquals(gameBoard.isDraw(), g2.isDraw());
+  }
+  
+  @Test
+  public void testReadMessage() {
+    Message msg = Json.GSON.fromJson(Message.NOT_STARTED.toJson(), Message.class);
+    
+    assertEquals(msg.isMoveValidity(), false);
+    assertEquals(msg.getCode(), 200);
+    assertEquals(msg.getMessage(), "Game has not started yet!");
+  }
+}
@@ -0,0 +1,60 @@
+package unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import load.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+
+  /**
+   * Small latencies are recorded exactly.
+   */
+  @Test
+  public void testSmallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i);
+    }
+
+    assertEquals(1000, histogram.getCount());
+    assertEquals(500, histogram.percentile(0.5));
+    assertEquals(990, histogram.percentile(0.99));
+    assertEquals(999, histogram.percentile(0.999));
+    assertEquals(1000, histogram.getMax());
+    assertEquals(500.5, histogram.getMean());
+  }
+
+  /**
+   * Large latencies are within 0.1% of the recorded values.
+   */
+  @Test
+  public void testLargeValuesArePrecise() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    long[] values = {5_000, 123_456, 9_876_543, 3_600_000_000L};
+    for (long value : values) {
+      histogram.record(value);
+    }
+
+    for (int i = 0; i < values.length; i++) {
+      long percentile = histogram.percentile((i + 1) / (double) values.length);
+      assertTrue(percentile >= values[i], percentile + " < " + values[i]);
+      assertTrue(percentile <= values[i] * 1.001, percentile + " > " + values[i]);
+    }
+  }
+
+  /**
+   * An empty histogram reports zeros, and negative latencies count as 0.
+   */
+  @Test
+  public void testEmptyAndNegative() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.percentile(0.99));
+    assertEquals(0, histogram.getMean());
+
+    histogram.record(-5);
+    assertEquals(0, histogram.percentile(1.0));
+    assertEquals(1, histogram.getCount());
+  }
+}
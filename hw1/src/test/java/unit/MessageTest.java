@@ -1,6 +1,7 @@
 package unit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import models.Message;
 import org.junit.jupiter.api.Test;
@@ -48,5 +49,20 @@ public class MessageTest {
     Message msg = new Message(true, 100, "Test");
     assertEquals(msg.toJson(), "{\"moveValidity\":true,\"code\":100,\"message\":\"Test\"}");
   }
+  
+  @Test
+  public void testSharedMessageToJson() {
+    assertEquals(Message.VALID.toJson(), "{\"moveValidity\":true,\"code\":100,\"message\":\"\"}");
+    assertEquals(Message.NOT_YOUR_TURN.toJson(), 
+        "{\"moveValidity\":false,\"code\":200,\"message\":\"Please wait for your turn!\"}");
+  }
+  
+  @Test
+  public void testSharedMessageIsImmutable() {
+    assertThrows(UnsupportedOperationException.class, () -> Message.VALID.setMoveValidity(false));
+    assertThrows(UnsupportedOperationException.class, () -> Message.VALID.setCode(200));
+    assertThrows(UnsupportedOperationException.class, () -> Message.VALID.setMessage("Test"));
+    assertEquals(Message.VALID.isMoveValidity(), true);
+  }
 
 }
@@ -0,0 +1,82 @@
+package unit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import utils.MetricsRegistry;
+
+public class MetricsRegistryTest {
+
+  /**
+   * Counters are created once per name and labels, and written with their labels.
+   */
+  @Test
+  public void testCounter() {
+    MetricsRegistry metrics = new MetricsRegistry();
+    MetricsRegistry.Counter valid = metrics.counter("moves_total", "Moves.", "code", "100");
+    assertSame(valid, metrics.counter("moves_total", "Moves.", "code", "100"));
+    valid.increment();
+    valid.increment();
+    metrics.counter("moves_total", "Moves.", "code", "200").increment();
+
+    assertEquals("# HELP moves_total Moves.\n"
+        + "# TYPE moves_total counter\n"
+        + "moves_total{code=\"100\"} 2\n"
+        + "moves_total{code=\"200\"} 1\n", metrics.scrape());
+  }
+
+  /**
+   * Gauges and counters registered with a supplier are read when scraped.
+   */
+  @Test
+  public void testReadings() {
+    MetricsRegistry metrics = new MetricsRegistry();
+    AtomicLong depth = new AtomicLong(3);
+    metrics.gauge("queue_depth", "Depth.", depth::get);
+    depth.set(7);
+
+    assertThat(metrics.scrape()).contains("# TYPE queue_depth gauge\nqueue_depth 7\n");
+  }
+
+  /**
+   * Timers are written as cumulative histograms in seconds.
+   */
+  @Test
+  public void testTimer() {
+    MetricsRegistry metrics = new MetricsRegistry();
+    MetricsRegistry.Timer timer = metrics.timer("request_seconds", "Requests.", 
+        "route", "/move");
+    timer.record(30_000L);
+    timer.record(2_000_000L);
+    timer.record(20_000_000_000L);
+
+    String scrape = metrics.scrape();
+    assertThat(scrape).contains("# TYPE request_seconds histogram\n");
+    assertThat(scrape).contains("request_seconds_bucket{route=\"/move\",le=\"5.0E-5\"} 1\n");
+    assertThat(scrape).contains("request_seconds_bucket{route=\"/move\",le=\"0.001\"} 1\n");
+    assertThat(scrape).contains("request_seconds_bucket{route=\"/move\",le=\"0.0025\"} 2\n");
+    assertThat(scrape).contains("request_seconds_bucket{route=\"/move\",le=\"10.0\"} 2\n");
+    assertThat(scrape).contains("request_seconds_bucket{route=\"/move\",le=\"+Inf\"} 3\n");
+    assertThat(scrape).contains("request_seconds_sum{route=\"/move\"} 20.00203\n");
+    assertThat(scrape).contains("request_seconds_count{route=\"/move\"} 3\n");
+  }
+
+  /**
+   * Label values are escaped, and a name keeps the type it was registered with.
+   */
+  @Test
+  public void testEscapingAndTypes() {
+    MetricsRegistry metrics = new MetricsRegistry();
+    metrics.counter("errors_total", "Errors.", "message", "a \"b\"\\\n").increment();
+    assertThat(metrics.scrape()).contains("errors_total{message=\"a \\\"b\\\"\\\\\\n\"} 1\n");
+
+    assertThrows(IllegalArgumentException.class, 
+        () -> metrics.timer("errors_total", "Errors."));
+    assertThrows(IllegalArgumentException.class, 
+        () -> metrics.counter("other_total", "Other.", "label"));
+  }
+}
@@ -0,0 +1,76 @@
+package unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import models.BitBoard;
+import models.GameBoard;
+import models.MinimaxTable;
+import models.Move;
+import org.junit.jupiter.api.Test;
+
+public class MinimaxTableTest {
+
+  @Test
+  public void testEmptyBoardIsDraw() {
+    assertEquals(MinimaxTable.score(0, 0), 0);
+    assertEquals(MinimaxTable.bestMove(0, 0), 0);
+  }
+  
+  @Test
+  public void testTakesWin() {
+    int own = BitBoard.cell(0, 0) | BitBoard.cell(0, 1);
+    int opponent = BitBoard.cell(1, 0) | BitBoard.cell(1, 1);
+    
+    assertEquals(MinimaxTable.bestMove(own, opponent), 2);
+    assertEquals(MinimaxTable.score(own, opponent) > 0, true);
+  }
+  
+  @Test
+  public void testBlocksLoss() {
+    int own = BitBoard.cell(1, 1);
+    int opponent = BitBoard.cell(2, 0) | BitBoard.cell(2, 1);
+    
+    assertEquals(MinimaxTable.bestMove(own, opponent), 8);
+  }
+  
+  @Test
+  public void testGameOver() {
+    int own = BitBoard.cell(1, 0) | BitBoard.cell(1, 1);
+    int opponent = BitBoard.cell(0, 0) | BitBoard.cell(0, 1) | BitBoard.cell(0, 2);
+    
+    assertEquals(MinimaxTable.bestMove(own, opponent), -1);
+    assertEquals(MinimaxTable.score(own, opponent) < 0, true);
+  }
+  
+  /**
+   * Plays every possible game of player 1 against the computer. Player 1 never wins.
+   */
+  @Test
+  public void testComputerNeverLoses() {
+    GameBoard gameBoard = new GameBoard('X');
+    gameBoard.joinGame(true);
+    assertEquals(playAll(gameBoard), 0);
+  }
+  
+  // Returns the number of games below this board that player 1 wins
+  private static int playAll(GameBoard gameBoard) {
+    if (gameBoard.isGameOver()) {
+      return gameBoard.getWinner() == 1 ? 1 : 0;
+    }
+    
+    int losses = 0;
+    for (int x = 0; x < 3; x++) {
+      for (int y = 0; y < 3; y++) {
+        GameBoard next = gameBoard.copy();
+        if (next.move(1, x, y).isMoveValidity()) {
+          Move reply = next.computerMove();
+          if (reply != null) {
+            assertEquals(next.move(2, reply.getMoveX(), reply.getMoveY()).isMoveValidity(), true);
+          }
+          losses += playAll(next);
+        }
+      }
+    }
+    return losses;
+  }
+}
@@ -2,11 +2,18 @@ package unit;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import models.GameBoard;
 import models.Player;
 import org.junit.jupiter.api.AfterAll;
@@ -16,6 +23,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
 import utils.SqliteDatabase;
+import utils.SqliteDatabase.StorageProfile;
 
 public class SqliteDatabaseTest {
   
@@ -188,6 +196,240 @@ public class SqliteDatabaseTest {
     assertEquals(gameBoard.isDraw(), g2.isDraw());
   }
   
+  /**
+   * Reopening the database keeps appending after the existing rows.
+   * @throws SQLException if sql error
+   */
+  @Test
+  @Order(8)
+  public void testReopenKeepsAppending() throws SQLException {
+    db.addGameBoardData(new GameBoard('X'));
+    
+    SqliteDatabase reopened = new SqliteDatabase();
+    GameBoard gameBoard = new GameBoard('O');
+    reopened.addGameBoardData(gameBoard);
+    reopened.closeConenction();
+    
+    assertEquals(db.getGameBoardData().getP1().getType(), 'O');
+  }
+  
+  /**
+   * Many writes and reads reuse the same statements and connections.
+   * @throws SQLException if sql error
+   */
+  @Test
+  @Order(9)
+  public void testRepeatedReadsAndWrites() throws SQLException {
+    GameBoard gameBoard = new GameBoard('X');
+    gameBoard.joinGame();
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        gameBoard.move(gameBoard.getTurn(), i, j);
+        db.addGameBoardData(gameBoard);
+        
+        assertArrayEquals(gameBoard.getBoardState(), db.getGameBoardData().getBoardState());
+      }
+    }
+  }
+  
+  /**
+   * A game is rebuilt from its latest snapshot and the moves logged after it.
+   * @throws SQLException if sql error
+   */
+  @Test
+  @Order(10)
+  public void testMoveLogReplay() throws SQLException {
+    SqliteDatabase log = new SqliteDatabase(4);
+    log.deleteGame("replay");
+    GameBoard gameBoard = new GameBoard('X');
+    log.snapshotGame("replay", gameBoard);
+    gameBoard.joinGame();
+    log.snapshotGame("replay", gameBoard);
+    
+    int[][] moves = {{0, 0}, {1, 1}, {2, 2}, {0, 2}, {2, 0}, {1, 0}};
+    for (int[] move : moves) {
+      int playerId = gameBoard.getTurn();
+      gameBoard.move(playerId, move[0], move[1]);
+      log.appendMove("replay", gameBoard.copy(), playerId, move[0], move[1]);
+    }
+    log.commit();
+    
+    GameBoard replayed = db.getGameBoardData("replay");
+    assertEquals(gameBoard.toJson(), replayed.toJson());
+    assertTrue(db.getGameIds().contains("replay"));
+    
+    log.deleteGame("replay");
+    log.commit();
+    log.closeConenction();
+  }
+  
+  /**
+   * A finished game is snapshotted, so nothing is left to replay.
+   * @throws SQLException if sql error
+   */
+  @Test
+  @Order(11)
+  public void testMoveLogSnapshotsFinishedGame() throws SQLException {
+    SqliteDatabase log = new SqliteDatabase(100);
+    log.deleteGame("finished");
+    GameBoard gameBoard = new GameBoard('O');
+    gameBoard.joinGame();
+    log.snapshotGame("finished", gameBoard);
+    
+    int[][] moves = {{0, 0}, {1, 0}, {0, 1}, {1, 1}, {0, 2}};
+    for (int[] move : moves) {
+      int playerId = gameBoard.getTurn();
+      gameBoard.move(playerId, move[0], move[1]);
+      log.appendMove("finished", gameBoard.copy(), playerId, move[0], move[1]);
+    }
+    log.commit();
+    
+    GameBoard replayed = db.getGameBoardData("finished");
+    assertEquals(1, replayed.getWinner());
+    assertEquals(gameBoard.toJson(), replayed.toJson());
+    
+    log.deleteGame("finished");
+    log.commit();
+    assertNull(db.getGameBoardData("finished"));
+    log.closeConenction();
+  }
+  
+  /**
+   * A large board keeps its size and win length in the move log.
+   * @throws SQLException if sql error
+   */
+  @Test
+  @Order(12)
+  public void testMoveLogLargeBoard() throws SQLException {
+    SqliteDatabase log = new SqliteDatabase(4);
+    log.deleteGame("gomoku");
+    GameBoard gameBoard = new GameBoard('X', 15, 5);
+    gameBoard.joinGame();
+    log.snapshotGame("gomoku", gameBoard);
+    
+    int[][] moves = {{7, 7}, {0, 0}, {7, 8}, {14, 14}, {7, 9}, {0, 14}};
+    for (int[] move : moves) {
+      int playerId = gameBoard.getTurn();
+      gameBoard.move(playerId, move[0], move[1]);
+      log.appendMove("gomoku", gameBoard.copy(), playerId, move[0], move[1]);
+    }
+    log.commit();
+    
+    GameBoard replayed = db.getGameBoardData("gomoku");
+    assertEquals(gameBoard.toJson(), replayed.toJson());
+    assertEquals(15, replayed.getSize());
+    assertEquals(5, replayed.getWinLength());
+    
+    log.deleteGame("gomoku");
+    log.commit();
+    log.closeConenction();
+  }
+  
+  /**
+   * The packed board keeps the marks, turn, winner and draw, and a larger board keeps its 
+   * cells and win length.
+   * @throws SQLException if sql error
+   */
+  @Test
+  @Order(13)
+  public void testPackedBoard() throws SQLException {
+    char[][] boardState = {{'X', 'O', 'X'}, {'O', 'O', 'X'}, {'\u0000', 'X', 'O'}};
+    GameBoard gameBoard = new GameBoard(new Player('X', 1), new Player('O', 2), 
+        false, 2, boardState, 2, true);
+    db.addGameBoardData(gameBoard);
+    assertEquals(gameBoard.toJson(), db.getGameBoardData().toJson());
+    
+    GameBoard large = new GameBoard('O', 9, 4);
+    large.joinGame();
+    large.move(1, 8, 7);
+    db.addGameBoardData(large);
+    GameBoard g2 = db.getGameBoardData();
+    assertEquals(large.toJson(), g2.toJson());
+    assertEquals(4, g2.getWinLength());
+  }
+  
+  /**
+   * A database with the text columns of schema version 0 is migrated to the packed board.
+   * @throws SQLException if sql error
+   */
+  @Test
+  @Order(14)
+  public void testMigrateTextSchema() throws SQLException {
+    try (Connection connection = DriverManager.getConnection("jdbc:sqlite:tictactoe.db");
+        Statement statement = connection.createStatement()) {
+      statement.executeUpdate("DROP TABLE GameBoard");
+      statement.executeUpdate("CREATE TABLE GameBoard (ID INT PRIMARY KEY NOT NULL, "
+          + "P1_ID INT, P1_TYPE CHAR(1), P2_ID INT, P2_TYPE CHAR(1), "
+          + "GAMESTARTED BOOLEAN NOT NULL, TURN INT NOT NULL, BOARDSTATE CHAR(9) NOT NULL, "
+          + "WINNER INT NOT NULL, ISDRAW BOOLEAN NOT NULL)");
+      statement.executeUpdate("INSERT INTO GameBoard VALUES "
+          + "(1, '1', 'O', 'NULL', 'NULL', '0', '1', 'NNNNNNNNN', '0', '0'), "
+          + "(2, '1', 'X', '2', 'O', '1', '2', 'XNNNONNNX', '0', '0')");
+      statement.executeUpdate("PRAGMA user_version = 0");
+    }
+    
+    SqliteDatabase migrated = new SqliteDatabase();
+    GameBoard gameBoard = migrated.getGameBoardData();
+    assertEquals('X', gameBoard.getP1().getType());
+    assertEquals(2, gameBoard.getP2().getId());
+    assertEquals(true, gameBoard.isGameStarted());
+    assertEquals(2, gameBoard.getTurn());
+    assertArrayEquals(new char[][] {{'X', '\u0000', '\u0000'}, {'\u0000', 'O', '\u0000'}, 
+        {'\u0000', '\u0000', 'X'}}, gameBoard.getBoardState());
+    
+    try (Connection connection = DriverManager.getConnection("jdbc:sqlite:tictactoe.db");
+        Statement statement = connection.createStatement()) {
+      ResultSet result = statement.executeQuery("PRAGMA user_version");
+      assertEquals(2, result.getInt(1));
+      result = statement.executeQuery("SELECT P2_TYPE, typeof(BOARD) FROM GameBoard WHERE ID = 1");
+      assertNull(result.getString(1));
+      assertEquals("integer", result.getString(2));
+    }
+    migrated.closeConenction();
+  }
+  
+  /**
+   * Every storage profile opens the database in WAL mode with its own sync level, and the 
+   * checkpointer copies committed writes back into the database.
+   * @throws Exception if sql error or reflection error
+   */
+  @Test
+  @Order(15)
+  public void testStorageProfiles() throws Exception {
+    Field connectionField = SqliteDatabase.class.getDeclaredField("connection");
+    connectionField.setAccessible(true);
+    int[] synchronous = {2, 1, 0};
+    
+    for (StorageProfile profile : StorageProfile.values()) {
+      SqliteDatabase profiled = new SqliteDatabase(4, profile);
+      assertEquals(profile, profiled.getStorageProfile());
+      Connection connection = (Connection) connectionField.get(profiled);
+      try (Statement statement = connection.createStatement()) {
+        assertEquals("wal", statement.executeQuery("PRAGMA journal_mode").getString(1));
+        assertEquals(synchronous[profile.ordinal()], 
+            statement.executeQuery("PRAGMA synchronous").getInt(1));
+      }
+      
+      profiled.addGameBoardData(new GameBoard('X'));
+      assertEquals(0, profiled.getCheckpointer().checkpoint());
+      assertTrue(profiled.getCheckpointer().getCheckpoints() > 0);
+      profiled.cleanTable();
+      profiled.closeConenction();
+    }
+  }
+  
+  /**
+   * An empty single-game table reads as no game instead of failing.
+   * @throws SQLException if sql error
+   */
+  @Test
+  @Order(16)
+  public void testEmptyTable() throws SQLException {
+    assertNull(db.getGameBoardData());
+    db.addGameBoardData(new GameBoard('O'));
+    assertEquals('O', db.getGameBoardData().getP1().getType());
+  }
+  
   /**
    * Closing connection with database.
    * @throws SQLException if error in sqlite
@@ -0,0 +1,54 @@
+package unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import controllers.VirtualThreadPool;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class VirtualThreadPoolTest {
+
+  @AfterEach
+  public void clearProperty() {
+    System.clearProperty(VirtualThreadPool.VIRTUAL_THREADS_PROPERTY);
+  }
+
+  /**
+   * Without the system property, Jetty keeps its default pool.
+   */
+  @Test
+  public void testDisabledByDefault() {
+    assertNull(VirtualThreadPool.fromSystemProperties());
+  }
+
+  /**
+   * With the system property, tasks run on virtual threads if the JVM has them, and
+   * Jetty keeps its default pool otherwise.
+   * @throws Exception if the pool cannot start or stop
+   */
+  @Test
+  public void testEnabled() throws Exception {
+    System.setProperty(VirtualThreadPool.VIRTUAL_THREADS_PROPERTY, "true");
+    VirtualThreadPool pool = VirtualThreadPool.fromSystemProperties();
+    if (Runtime.version().feature() < 21) {
+      assertNull(pool);
+      return;
+    }
+
+    assertNotNull(pool);
+    pool.start();
+    CompletableFuture<String> name = new CompletableFuture<>();
+    assertTrue(pool.tryExecute(() -> name.complete(Thread.currentThread().getName())));
+    assertTrue(name.get(5, TimeUnit.SECONDS).startsWith("jetty-virtual-"));
+    assertFalse(pool.isLowOnThreads());
+    pool.stop();
+    pool.join();
+    assertEquals(0, pool.getIdleThreads());
+  }
+}
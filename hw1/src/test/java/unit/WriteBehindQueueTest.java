@@ -0,0 +1,164 @@
+package unit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import models.GameBoard;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import utils.SqliteDatabase;
+import utils.WriteBehindQueue;
+import utils.WriteBehindQueue.Durability;
+
+public class WriteBehindQueueTest {
+
+  static SqliteDatabase db;
+
+  @BeforeAll
+  public static void init() throws SQLException {
+    db = new SqliteDatabase();
+  }
+
+  @BeforeEach
+  public void clean() throws SQLException {
+    db.cleanTable();
+  }
+
+  /**
+   * A SYNC write is committed before submit returns.
+   * @throws SQLException if sql error
+   */
+  @Test
+  public void testSyncWriteIsCommitted() throws SQLException {
+    WriteBehindQueue writes = new WriteBehindQueue(db, Durability.SYNC, 4);
+    GameBoard gameBoard = new GameBoard('X');
+    writes.submit(database -> database.insertGameBoardData(gameBoard));
+
+    assertEquals('X', db.getGameBoardData().getP1().getType());
+    assertEquals(1, writes.getWritten());
+    writes.close();
+  }
+
+  /**
+   * BATCHED writes are all committed by flush, in order.
+   * @throws SQLException if sql error
+   */
+  @Test
+  public void testBatchedWritesAreFlushedInOrder() throws SQLException {
+    WriteBehindQueue writes = new WriteBehindQueue(db, Durability.BATCHED, 64);
+    GameBoard gameBoard = new GameBoard('O');
+    gameBoard.joinGame();
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        gameBoard.getBoardState()[i][j] = 'O';
+        GameBoard copy = gameBoard.copy();
+        writes.submit(database -> database.insertGameBoardData(copy));
+      }
+    }
+    writes.flush();
+
+    assertArrayEquals(gameBoard.getBoardState(), db.getGameBoardData().getBoardState());
+    assertEquals(9, writes.getSubmitted());
+    assertEquals(9, writes.getWritten());
+    assertEquals(0, writes.getQueueDepth());
+    writes.close();
+  }
+
+  /**
+   * A failing write is reported to a SYNC caller and does not undo the other writes.
+   * @throws SQLException if sql error
+   */
+  @Test
+  public void testFailedWriteIsIsolated() throws SQLException {
+    WriteBehindQueue writes = new WriteBehindQueue(db, Durability.SYNC, 4);
+    assertThrows(SQLException.class, () -> writes.submit(database -> {
+      throw new SQLException("Broken write");
+    }));
+    writes.submit(database -> database.insertGameBoardData(new GameBoard('X')));
+
+    assertEquals(1, writes.getFailed());
+    assertEquals(1, writes.getWritten());
+    assertEquals('X', db.getGameBoardData().getP1().getType());
+    writes.close();
+  }
+
+  /**
+   * A write that throws an unchecked exception or an error fails without stopping the writer
+   * thread.
+   * @throws SQLException if sql error
+   */
+  @Test
+  public void testUncheckedFailureKeepsWriter() throws SQLException {
+    WriteBehindQueue writes = new WriteBehindQueue(db, Durability.SYNC, 1);
+    SQLException e = assertThrows(SQLException.class, () -> writes.submit(database -> {
+      throw new IllegalStateException("Broken write");
+    }));
+    assertEquals(IllegalStateException.class, e.getCause().getClass());
+    e = assertThrows(SQLException.class, () -> writes.submit(database -> {
+      throw new AssertionError("Broken write");
+    }));
+    assertEquals(AssertionError.class, e.getCause().getClass());
+
+    // The writer still takes writes, so neither submit nor flush blocks
+    writes.submit(database -> database.insertGameBoardData(new GameBoard('O')));
+    writes.flush();
+    assertEquals(2, writes.getFailed());
+    assertEquals(1, writes.getWritten());
+    assertEquals('O', db.getGameBoardData().getP1().getType());
+    writes.close();
+  }
+
+  /**
+   * FIRE_AND_FORGET drops writes once the queue is full instead of waiting.
+   * @throws SQLException if sql error
+   * @throws InterruptedException if interrupted
+   */
+  @Test
+  public void testFireAndForgetDropsWhenFull() throws SQLException, InterruptedException {
+    WriteBehindQueue writes = new WriteBehindQueue(db, Durability.FIRE_AND_FORGET, 1);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    // Keep the writer busy so the queue fills up
+    writes.submit(database -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    started.await();
+    writes.submit(database -> { });
+    writes.submit(database -> { });
+    release.countDown();
+    writes.close();
+
+    assertEquals(3, writes.getSubmitted());
+    assertEquals(1, writes.getDropped());
+    assertEquals(2, writes.getWritten());
+  }
+
+  /**
+   * Writes and flushes are refused once the queue is closed, instead of waiting forever.
+   * @throws SQLException if sql error
+   */
+  @Test
+  public void testSubmitAfterClose() throws SQLException {
+    WriteBehindQueue writes = new WriteBehindQueue(db, Durability.BATCHED, 4);
+    writes.close();
+    assertThrows(SQLException.class, () -> writes.submit(database -> { }));
+    assertThrows(SQLException.class, writes::flush);
+    writes.close();
+  }
+
+  @AfterAll
+  public static void close() throws SQLException {
+    db.cleanTable();
+  }
+}